@@ -0,0 +1,38 @@
+package com.github.segoh.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.AudioSink;
+
+/**
+ * Hands every block to JMH so the rendering cannot be optimized away.
+ */
+public class BlackholeSink implements AudioSink {
+
+    private final Blackhole _blackhole;
+
+    public BlackholeSink(final Blackhole blackhole) {
+        _blackhole = blackhole;
+    }
+
+    public void open(final AudioContext context) {
+    }
+
+    public void write(final float[] buffer, final int length) {
+        _blackhole.consume(buffer);
+    }
+
+    public void writeSilence(final int length) {
+        _blackhole.consume(length);
+    }
+
+    public void pause() {
+    }
+
+    public void resume() {
+    }
+
+    public void close() {
+    }
+}
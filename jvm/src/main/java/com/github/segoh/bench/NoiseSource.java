@@ -0,0 +1,34 @@
+package com.github.segoh.bench;
+
+import java.util.Random;
+
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.UGen;
+
+/**
+ * Adds a fixed block of white noise, so processors have a deterministic,
+ * non-silent input that costs next to nothing to produce.
+ */
+public class NoiseSource extends UGen {
+
+    private final float[] _noise;
+
+    public NoiseSource(final AudioContext context, final long seed) {
+        super(context);
+        _noise = context.newBuffer();
+        final Random random = new Random(seed);
+        for (int i = 0; i < _noise.length; i++) {
+            _noise[i] = 0.5f * (random.nextFloat() * 2f - 1f);
+        }
+    }
+
+    @Override
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final float[] noise = _noise;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            buffer[i] += noise[i];
+        }
+        return true;
+    }
+}
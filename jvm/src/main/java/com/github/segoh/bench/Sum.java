@@ -0,0 +1,14 @@
+package com.github.segoh.bench;
+
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.UGen;
+
+/**
+ * Does nothing but mix its inputs, to measure the fan-in overhead of UGen.renderInputs.
+ */
+public class Sum extends UGen {
+
+    public Sum(final AudioContext context) {
+        super(context);
+    }
+}
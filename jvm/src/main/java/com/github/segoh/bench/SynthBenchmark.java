@@ -0,0 +1,85 @@
+package com.github.segoh.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.segoh.Synth;
+import com.github.segoh.control.Clock;
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.OfflineRenderer;
+import com.github.segoh.dsp.RenderWorkers;
+
+/**
+ * Cost of the complete patch built by Synth, in ns/sample, with
+ * {@link #voices} notes held on a pool of as many voices, rendered on
+ * {@link #renderThreads} helper threads besides the benchmark thread, into
+ * {@link #channels} output channels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(SynthBenchmark.FRAMES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SynthBenchmark {
+
+    static final int FRAMES = 4096;
+
+    @Param({"1", "4", "8", "16"})
+    public int voices;
+
+    @Param({"64", "256", "1024"})
+    public int blockSize;
+
+    @Param({"0", "3"})
+    public int renderThreads;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    private OfflineRenderer _renderer;
+    private RenderWorkers _workers;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final AudioContext context = new AudioContext(AudioContext.DEFAULT_SAMPLE_RATE, blockSize, channels);
+        final Synth synth = new Synth(context, new BlackholeSink(blackhole), new Clock() {
+            public long uptimeMillis() {
+                return 0;
+            }
+        }, voices);
+        _workers = renderThreads > 0 ? new RenderWorkers(renderThreads) : null;
+        _renderer = synth.createOfflineRenderer(new BlackholeSink(blackhole), _workers);
+        for (int key = 0; key < voices; key++) {
+            synth.trigger(key, 110 * (key + 1), 165 * (key + 1), 0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        _renderer.close();
+        if (_workers != null) {
+            _workers.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void playing() {
+        _renderer.render(FRAMES);
+    }
+}
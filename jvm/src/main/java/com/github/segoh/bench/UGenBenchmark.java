@@ -0,0 +1,179 @@
+package com.github.segoh.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.segoh.dsp.AdsrEnv;
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.BufferPool;
+import com.github.segoh.dsp.Delay;
+import com.github.segoh.dsp.ExpEnv;
+import com.github.segoh.dsp.Mixer;
+import com.github.segoh.dsp.MoogLPF;
+import com.github.segoh.dsp.RenderPlan;
+import com.github.segoh.dsp.UGen;
+import com.github.segoh.dsp.WavetableOsc;
+
+/**
+ * Cost of each unit generator on its own.
+ * Every invocation renders {@link #FRAMES} samples in blocks of
+ * {@link #blockSize}, so the scores are ns/sample. Run with {@code -prof gc}:
+ * gc.alloc.rate.norm is then bytes/sample, multiply by the block size for
+ * bytes/block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(UGenBenchmark.FRAMES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UGenBenchmark {
+
+    static final int FRAMES = 4096;
+
+    @Param({"64", "256", "1024"})
+    public int blockSize;
+
+    AudioContext context;
+    private float[] _buffer;
+    private NoiseSource _noise;
+    private WavetableOsc _osc;
+    private MoogLPF _lpf;
+    private Delay _delay;
+    private ExpEnv _env;
+    private AdsrEnv _adsr;
+
+    @Setup
+    public void setUp() {
+        context = new AudioContext(AudioContext.DEFAULT_SAMPLE_RATE, blockSize);
+        _buffer = context.newBuffer();
+
+        _noise = new NoiseSource(context, 1);
+
+        _osc = new WavetableOsc(context);
+        _osc.fillWithSaw();
+        _osc.setFreq(440);
+
+        _lpf = new MoogLPF(context, 1000, 0.6f);
+        new NoiseSource(context, 2).chuck(_lpf);
+
+        _delay = new Delay(context, context.getSampleRate() / 4, 0.3f);
+        new NoiseSource(context, 3).chuck(_delay);
+
+        _env = new ExpEnv(context);
+        _env.setFactor(ExpEnv.FACTOR_HARD);
+        _env.setActive(true);
+        new NoiseSource(context, 4).chuck(_env);
+
+        // A long decay keeps the envelope inside a curved segment
+        _adsr = new AdsrEnv(context).set(0.01f, 100f, 0.5f, 0.1f);
+        _adsr.noteOn();
+        new NoiseSource(context, 5).chuck(_adsr);
+    }
+
+    private void run(final UGen ugen, final Blackhole blackhole) {
+        final float[] buffer = _buffer;
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            for (int i = 0; i < blockSize; i++) {
+                buffer[i] = 0;
+            }
+            blackhole.consume(ugen.render(buffer, 0, blockSize));
+        }
+        blackhole.consume(buffer);
+    }
+
+    /** Input baseline, included in all processor scores below. */
+    @Benchmark
+    public void noise(final Blackhole blackhole) {
+        run(_noise, blackhole);
+    }
+
+    @Benchmark
+    public void wavetableOsc(final Blackhole blackhole) {
+        run(_osc, blackhole);
+    }
+
+    @Benchmark
+    public void moogLpf(final Blackhole blackhole) {
+        run(_lpf, blackhole);
+    }
+
+    @Benchmark
+    public void delay(final Blackhole blackhole) {
+        run(_delay, blackhole);
+    }
+
+    @Benchmark
+    public void expEnv(final Blackhole blackhole) {
+        run(_env, blackhole);
+    }
+
+    @Benchmark
+    public void adsrEnv(final Blackhole blackhole) {
+        run(_adsr, blackhole);
+    }
+
+    /** renderInputs over {@link FanIn#fanIn} noise inputs. */
+    @Benchmark
+    public void renderInputs(final FanIn state, final Blackhole blackhole) {
+        run(state.sum, blackhole);
+    }
+
+    /** The same fan-in through a compiled RenderPlan. */
+    @Benchmark
+    public void renderPlan(final FanIn state, final Blackhole blackhole) {
+        final float[] buffer = _buffer;
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            for (int i = 0; i < blockSize; i++) {
+                buffer[i] = 0;
+            }
+            blackhole.consume(state.plan.render(buffer, 0, blockSize));
+        }
+        blackhole.consume(buffer);
+    }
+
+    /** The same fan-in through mixer channels at half gain, rendered recursively. */
+    @Benchmark
+    public void mixer(final FanIn state, final Blackhole blackhole) {
+        run(state.mixer, blackhole);
+    }
+
+    @State(Scope.Thread)
+    public static class FanIn {
+
+        @Param({"1", "4", "16"})
+        public int fanIn;
+
+        Sum sum;
+        RenderPlan plan;
+        Mixer mixer;
+
+        @Setup
+        public void setUp(final UGenBenchmark benchmark) {
+            sum = new Sum(benchmark.context);
+            for (int i = 0; i < fanIn; i++) {
+                new NoiseSource(benchmark.context, 5 + i).chuck(sum);
+            }
+            plan = RenderPlan.compile(sum);
+
+            mixer = new Mixer(benchmark.context, new BufferPool(benchmark.context));
+            for (int i = 0; i < fanIn; i++) {
+                mixer.addInput(new NoiseSource(benchmark.context, 5 + i), 0.5f);
+            }
+        }
+    }
+}
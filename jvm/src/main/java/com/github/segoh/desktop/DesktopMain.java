@@ -0,0 +1,54 @@
+package com.github.segoh.desktop;
+
+import com.github.segoh.Synth;
+import com.github.segoh.control.Clock;
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.AudioSink;
+import com.github.segoh.dsp.NullSink;
+import com.github.segoh.dsp.RenderStats;
+
+/**
+ * Plays the synth on a plain JVM, for profiling with desktop tools.
+ * A short arpeggio loops for the given number of seconds, through the sound
+ * card if there is one and through a real-time paced NullSink otherwise.
+ *
+ * Usage: DesktopMain [seconds] [sampleRate] [blockSize] [voices] [channels]
+ */
+public class DesktopMain {
+
+    private static final float[] ARPEGGIO = { 220f, 277.18f, 329.63f, 440f };
+
+    public static void main(final String[] args) throws InterruptedException {
+        final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int sampleRate = args.length > 1 ? Integer.parseInt(args[1]) : AudioContext.DEFAULT_SAMPLE_RATE;
+        final int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : AudioContext.DEFAULT_BLOCK_SIZE;
+        final int voices = args.length > 3 ? Integer.parseInt(args[3]) : Synth.DEFAULT_VOICES;
+        final int channels = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+        final AudioContext context = new AudioContext(sampleRate, blockSize, channels);
+        final AudioSink sink = JavaSoundSink.isAvailable(context) ? new JavaSoundSink() : new NullSink(true);
+        final Clock clock = new Clock() {
+            public long uptimeMillis() {
+                return System.nanoTime() / 1000000;
+            }
+        };
+        final RenderStats stats = new RenderStats(true);
+        final Synth synth = new Synth(context, sink, clock, voices).setStats(stats);
+
+        System.out.println("Playing " + context + " with " + voices + " voices on "
+                + sink.getClass().getSimpleName());
+        synth.start();
+        final long end = clock.uptimeMillis() + seconds * 1000L;
+        for (int step = 0; clock.uptimeMillis() < end; step++) {
+            final int key = step % voices;
+            final float freq = ARPEGGIO[step % ARPEGGIO.length];
+            synth.trigger(key, freq, freq * 1.5f, clock.uptimeMillis());
+            synth.setCutoff(600f + 3000f * (step % 16) / 16f, clock.uptimeMillis());
+            Thread.sleep(125);
+            synth.damp(key, clock.uptimeMillis());
+        }
+        synth.stop();
+        Thread.sleep(200);
+        System.out.println(stats);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.segoh.desktop;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.AudioSink;
+import com.github.segoh.dsp.Kernels;
+
+/**
+ * Streams blocks to the default javax.sound output line.
+ */
+public class JavaSoundSink implements AudioSink {
+
+    private static final int BYTES_PER_SAMPLE = 2;
+    private static final Kernels KERNELS = Kernels.get();
+
+    private final int _bufferedBlocks;
+    private SourceDataLine _line = null;
+    private int _channels;
+    private byte[] _bytes;
+    private ShortBuffer _samples;
+    private short[] _pcm;
+    private byte[] _silence;
+
+    public JavaSoundSink() {
+        this(4);
+    }
+
+    /**
+     * @param bufferedBlocks size of the line buffer in blocks
+     */
+    public JavaSoundSink(final int bufferedBlocks) {
+        _bufferedBlocks = bufferedBlocks;
+    }
+
+    /**
+     * @return true if the default mixer can play the given context
+     */
+    public static boolean isAvailable(final AudioContext context) {
+        try {
+            AudioSystem.getSourceDataLine(formatFor(context));
+            return true;
+        } catch (final LineUnavailableException e) {
+            return false;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static AudioFormat formatFor(final AudioContext context) {
+        return new AudioFormat(context.getSampleRate(), 8 * BYTES_PER_SAMPLE, context.getChannels(), true, false);
+    }
+
+    public void open(final AudioContext context) {
+        _channels = context.getChannels();
+        final int blockBytes = context.getBlockSize() * _channels * BYTES_PER_SAMPLE;
+        _bytes = new byte[blockBytes];
+        _samples = ByteBuffer.wrap(_bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        _pcm = new short[blockBytes / BYTES_PER_SAMPLE];
+        _silence = new byte[blockBytes];
+        try {
+            _line = AudioSystem.getSourceDataLine(formatFor(context));
+            _line.open(formatFor(context), blockBytes * _bufferedBlocks);
+        } catch (final LineUnavailableException e) {
+            throw new IllegalStateException("No audio output for " + context, e);
+        }
+        _line.start();
+    }
+
+    public void write(final float[] buffer, final int length) {
+        final int samples = length * _channels;
+        KERNELS.toPcm16(buffer, _pcm, samples);
+        _samples.clear();
+        _samples.put(_pcm, 0, samples);
+        _line.write(_bytes, 0, samples * BYTES_PER_SAMPLE);
+    }
+
+    public void writeSilence(final int length) {
+        _line.write(_silence, 0, length * _channels * BYTES_PER_SAMPLE);
+    }
+
+    public void pause() {
+        _line.stop();
+        _line.flush();
+    }
+
+    public void resume() {
+        _line.start();
+    }
+
+    public void close() {
+        _line.drain();
+        _line.stop();
+        _line.close();
+        _line = null;
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.segoh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.segoh.control.Clock;
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.AudioSink;
+import com.github.segoh.dsp.OfflineRenderer;
+import com.github.segoh.dsp.RenderWorkers;
+
+public class SynthTest {
+
+    private static final int FRAMES = 48000;
+
+    private final AudioContext _context = new AudioContext(48000, 256, 2);
+
+    @Test
+    public void rendersTheSameOnWorkersAsOnOneThread() {
+        final float[] serial = render(null);
+        final RenderWorkers workers = new RenderWorkers(3);
+        final float[] parallel;
+        try {
+            parallel = render(workers);
+        } finally {
+            workers.shutdown();
+        }
+        assertTrue("rendered silence", peak(serial) > 0.01f);
+        assertArrayEquals(serial, parallel, 0f);
+    }
+
+    @Test
+    public void startsOfflineNotesAtTheirRenderedTime() {
+        final CapturingSink sink = new CapturingSink(4096 * _context.getChannels());
+        final Synth synth = new Synth(_context, sink, new Clock() {
+            public long uptimeMillis() {
+                throw new AssertionError("Offline rendering must not read the clock");
+            }
+        }, 4);
+        final OfflineRenderer renderer = synth.createOfflineRenderer(sink);
+        // 10 ms is frame 480, inside the second block
+        synth.trigger(0, 440, 660, 10);
+        renderer.render(4096);
+        renderer.close();
+
+        final float[] samples = sink.getSamples();
+        final int channels = _context.getChannels();
+        assertEquals(0f, peak(Arrays.copyOf(samples, 480 * channels)), 0f);
+        assertTrue(peak(Arrays.copyOfRange(samples, 480 * channels, 512 * channels)) > 0);
+    }
+
+    /**
+     * Play a chord, change the voice count halfway and release the notes.
+     */
+    private float[] render(final RenderWorkers workers) {
+        final CapturingSink sink = new CapturingSink(FRAMES * _context.getChannels());
+        final Synth synth = new Synth(_context, sink, new Clock() {
+            public long uptimeMillis() {
+                return 0;
+            }
+        }, 4);
+        final OfflineRenderer renderer = synth.createOfflineRenderer(sink, workers);
+        for (int key = 0; key < 4; key++) {
+            synth.trigger(key, 110 * (key + 1), 165 * (key + 1), 0);
+        }
+        renderer.render(FRAMES / 2);
+        synth.setVoiceCount(6);
+        for (int key = 0; key < 4; key++) {
+            synth.damp(key, 0);
+        }
+        renderer.render(FRAMES / 2);
+        renderer.close();
+        return sink.getSamples();
+    }
+
+    private static float peak(final float[] samples) {
+        float peak = 0;
+        for (final float sample : samples) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        return peak;
+    }
+
+    private static final class CapturingSink implements AudioSink {
+
+        private final float[] _samples;
+        private int _position = 0;
+        private int _channels;
+
+        CapturingSink(final int capacity) {
+            _samples = new float[capacity];
+        }
+
+        public void open(final AudioContext context) {
+            _channels = context.getChannels();
+        }
+
+        public void write(final float[] buffer, final int length) {
+            System.arraycopy(buffer, 0, _samples, _position, length * _channels);
+            _position += length * _channels;
+        }
+
+        public void writeSilence(final int length) {
+            _position += length * _channels;
+        }
+
+        public void pause() {
+        }
+
+        public void resume() {
+        }
+
+        public void close() {
+        }
+
+        float[] getSamples() {
+            return Arrays.copyOf(_samples, _position);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.segoh.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MixerTest {
+
+    private final AudioContext _context = new AudioContext(48000, 64, 1);
+
+    @Test
+    public void reservesNestedMixersWhenTheyAreAdded() {
+        final BufferPool pool = new BufferPool(_context);
+        final Mixer inner = new Mixer(_context, pool);
+        inner.addInput(new WavetableOsc(_context).fillWithSin());
+        final Mixer outer = new Mixer(_context, pool);
+        outer.addInput(inner);
+        outer.addInput(new WavetableOsc(_context).fillWithSaw());
+        assertEquals(4, pool.getCapacity());
+
+        assertTrue(outer.render(_context.newBuffer(), 0, _context.getBlockSize()));
+        assertEquals(4, pool.getCapacity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsInsteadOfGrowingThePool() {
+        final BufferPool pool = new BufferPool(_context);
+        pool.reserve(1);
+        pool.acquire();
+        pool.acquire();
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.segoh.dsp;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MoogLPFTest {
+
+    private static final int BLOCK = 64;
+
+    private final AudioContext _context = new AudioContext(48000, BLOCK, 1);
+    private final Constant _source = new Constant(_context);
+    private final MoogLPF _lpf = new MoogLPF(_context, 1000, 0.1f);
+    private final float[] _buffer = new float[BLOCK];
+    private float _last;
+
+    public MoogLPFTest() {
+        _source.chuck(_lpf);
+    }
+
+    @Test
+    public void switchesOversamplingWithoutAJump() {
+        _lpf.setOversampling(2);
+        _source.value = 0.5f;
+        render(100);
+        // Settle at 1x on another level, the 2x history is left behind
+        _lpf.setOversampling(1);
+        _source.value = -0.5f;
+        render(100);
+
+        for (final int factor : new int[] { 2, 4, 1, 4 }) {
+            _lpf.setOversampling(factor);
+            final float jump = render(1);
+            assertTrue("jump of " + jump + " switching to " + factor + "x", jump < 0.01f);
+        }
+    }
+
+    /**
+     * @return the largest step between two consecutive output samples
+     */
+    private float render(final int blocks) {
+        float jump = 0;
+        for (int b = 0; b < blocks; b++) {
+            for (int i = 0; i < BLOCK; i++) {
+                _buffer[i] = 0;
+            }
+            _lpf.render(_buffer, 0, BLOCK);
+            for (int i = 0; i < BLOCK; i++) {
+                jump = Math.max(jump, Math.abs(_buffer[i] - _last));
+                _last = _buffer[i];
+            }
+        }
+        return jump;
+    }
+
+    private static final class Constant extends UGen {
+
+        float value;
+
+        Constant(final AudioContext context) {
+            super(context);
+        }
+
+        @Override
+        protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+            for (int i = offset; i < offset + length; i++) {
+                buffer[i] = value;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.segoh.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class OfflineRendererTest {
+
+    private static final int DATA_SIZE_OFFSET = 40;
+
+    @Test
+    public void appendsConsecutiveRendersToOneOutput() {
+        final AudioContext context = new AudioContext(48000, 256, 2);
+        final WavetableOsc osc = new WavetableOsc(context).fillWithSin();
+        osc.setFreq(440);
+        final ByteBuffer target = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        final OfflineRenderer renderer = new OfflineRenderer(osc, new WavBufferSink(target));
+
+        renderer.render(1000).render(1000);
+        renderer.close();
+
+        // Each render rounds up to 4 blocks
+        final int dataBytes = 8 * 256 * 2 * 2;
+        assertEquals(2048, renderer.getFramesRendered());
+        assertEquals(Wav.HEADER_SIZE + dataBytes, target.position());
+        assertEquals(dataBytes, target.getInt(DATA_SIZE_OFFSET));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesToRenderAfterClose() {
+        final AudioContext context = new AudioContext(48000, 256, 1);
+        final OfflineRenderer renderer = new OfflineRenderer(new WavetableOsc(context), new NullSink());
+        renderer.render(256);
+        renderer.close();
+        renderer.render(256);
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.segoh.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Feeds synthetic render loads at 100 blocks per second: 1 s of hold,
+ * 5 s of quiet before the first step up.
+ */
+public class QualityGovernorTest {
+
+    private static final int BLOCKS_PER_SECOND = 100;
+    private static final long DEADLINE = 1000;
+
+    private final ArrayList<int[]> _changes = new ArrayList<int[]>();
+    private int _block = 0;
+    private final QualityGovernor _governor = new QualityGovernor(
+            new AudioContext(48000, 48000 / BLOCKS_PER_SECOND, 1), 0, 3, 1, new QualityGovernor.Listener() {
+                public void onTierChanged(final int tier) {
+                    _changes.add(new int[] { _block, tier });
+                }
+            });
+
+    @Test
+    public void stepsUpAfterAQuietPeriod() {
+        feed(0.1f, 499);
+        assertEquals(1, _governor.getTier());
+        feed(0.1f, 1);
+        assertEquals(2, _governor.getTier());
+    }
+
+    @Test
+    public void takesBackAFailedStepUpWithinTheHold() {
+        feedByTier(0.1f, 0.9f, 600);
+        assertEquals(2, _changes.size());
+        assertEquals(2, _changes.get(0)[1]);
+        assertEquals(1, _changes.get(1)[1]);
+        final int reaction = _changes.get(1)[0] - _changes.get(0)[0];
+        // Only as long as the smoothed load needs to cross the threshold
+        assertTrue("took " + reaction + " blocks", reaction < BLOCKS_PER_SECOND / 2);
+    }
+
+    @Test
+    public void waitsTwiceAsLongAfterAFailedStepUp() {
+        feedByTier(0.1f, 0.9f, 2000);
+        assertEquals(4, _changes.size());
+        final int firstQuiet = _changes.get(0)[0];
+        final int secondQuiet = _changes.get(2)[0] - _changes.get(1)[0];
+        // The hold after the step down comes first, then twice the quiet period
+        assertEquals(BLOCKS_PER_SECOND + 2 * (firstQuiet + 1), secondQuiet + 1);
+    }
+
+    @Test
+    public void keepsAStepUpThatHoldsThroughItsHold() {
+        feedByTier(0.1f, 0.5f, 600);
+        assertEquals(1, _changes.size());
+        assertEquals(2, _governor.getTier());
+        // Above the low threshold, so it stays there
+        feedByTier(0.1f, 0.5f, 1000);
+        assertEquals(2, _governor.getTier());
+    }
+
+    @Test
+    public void stepsDownUnderOverload() {
+        feed(0.95f, 200);
+        assertEquals(0, _governor.getTier());
+        assertEquals(1, _changes.size());
+        assertEquals(0, _changes.get(0)[1]);
+    }
+
+    @Test
+    public void fallsThroughSeveralTiersWithoutWaitingForTheHold() {
+        final QualityGovernor governor = new QualityGovernor(
+                new AudioContext(48000, 48000 / BLOCKS_PER_SECOND, 1), 0, 3, 3, new QualityGovernor.Listener() {
+                    public void onTierChanged(final int tier) {
+                    }
+                });
+        for (int b = 0; b < BLOCKS_PER_SECOND; b++) {
+            governor.recordBlock((long)(0.95f * DEADLINE), DEADLINE);
+        }
+        assertEquals(0, governor.getTier());
+    }
+
+    private void feed(final float load, final int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            _governor.recordBlock((long)(load * DEADLINE), DEADLINE);
+            _block++;
+        }
+    }
+
+    /** Light load on tier 1 and below, another one above. */
+    private void feedByTier(final float light, final float heavy, final int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            feed(_governor.getTier() >= 2 ? heavy : light, 1);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.segoh.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class RecorderTest {
+
+    private static final int HEADER_BYTES = 44;
+
+    @Test
+    public void roundTripsBlocksThatAreNoPowerOfTwo() throws Exception {
+        // 240 stereo frames per block, the ring is a small power of two
+        checkRoundTrip(new AudioContext(48000, 240, 2), 0.01f, 40);
+    }
+
+    @Test
+    public void roundTripsOddMonoBlocks() throws Exception {
+        checkRoundTrip(new AudioContext(44100, 147, 1), 0.01f, 40);
+    }
+
+    private static void checkRoundTrip(final AudioContext context, final float ringSeconds, final int blocks)
+            throws Exception {
+        final int samples = context.getBlockSize() * context.getChannels();
+        final File file = File.createTempFile("recorder", ".wav");
+        file.deleteOnExit();
+        final Recorder recorder = new Recorder(context, file, ringSeconds);
+        recorder.start();
+        final float[] block = new float[samples];
+        for (int b = 0; b < blocks; b++) {
+            for (int i = 0; i < samples; i++) {
+                block[i] = valueAt(b * samples + i);
+            }
+            // Offer the block again until the writer has made room for it
+            while (true) {
+                final long dropped = recorder.getFramesDropped();
+                recorder.record(block, context.getBlockSize());
+                if (recorder.getFramesDropped() == dropped) {
+                    break;
+                }
+                Thread.sleep(1);
+            }
+        }
+        recorder.stop();
+
+        final short[] written = readData(file);
+        assertEquals(blocks * samples, written.length);
+        for (int i = 0; i < written.length; i++) {
+            // Dither moves a sample by at most one step either way
+            assertEquals("sample " + i, valueAt(i) * 32767f, written[i], 1.5f);
+        }
+    }
+
+    /** A ramp that never repeats within the test, so misplaced samples show. */
+    private static float valueAt(final int index) {
+        return (index % 20000) / 20000f - 0.5f;
+    }
+
+    private static short[] readData(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final byte[] bytes = new byte[(int)raf.length() - HEADER_BYTES];
+            raf.seek(HEADER_BYTES);
+            raf.readFully(bytes);
+            final short[] data = new short[bytes.length / 2];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+}
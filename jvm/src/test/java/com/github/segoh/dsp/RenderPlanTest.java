@@ -0,0 +1,81 @@
+package com.github.segoh.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RenderPlanTest {
+
+    private final AudioContext _context = new AudioContext(48000, 64, 1);
+
+    @Test
+    public void staysCurrentWhileAnotherGraphIsBuilt() {
+        final Gain root = new Gain(_context);
+        new WavetableOsc(_context).chuck(new Gain(_context)).chuck(root);
+        final RenderPlan plan = RenderPlan.compile(root);
+
+        new WavetableOsc(_context).chuck(new Gain(_context)).chuck(new Gain(_context));
+        assertFalse(plan.isStale());
+    }
+
+    @Test
+    public void becomesStaleWhenOneOfItsNodesChanges() {
+        final Gain root = new Gain(_context);
+        final Gain gain = new Gain(_context);
+        final WavetableOsc osc = new WavetableOsc(_context);
+        osc.chuck(gain).chuck(root);
+        final RenderPlan plan = RenderPlan.compile(root);
+
+        osc.unchuck(gain);
+        assertTrue(plan.isStale());
+    }
+
+    @Test
+    public void becomesStaleWhenTheRootChanges() {
+        final Gain root = new Gain(_context);
+        new WavetableOsc(_context).chuck(root);
+        final RenderPlan plan = RenderPlan.compile(root);
+
+        new WavetableOsc(_context).chuck(root);
+        assertTrue(plan.isStale());
+    }
+
+    @Test
+    public void foldsWiderOutputsIntoTheBuffer() {
+        final AudioContext quad = new AudioContext(48000, 64, 4);
+        final Gain root = new Gain(quad);
+        new ChannelNumbers(quad).chuck(root);
+        final RenderPlan plan = RenderPlan.compile(root);
+        final int stride = quad.getBlockSize();
+
+        final float[] stereo = new float[2 * stride];
+        plan.renderChannels(stereo, 0, stride, 2);
+        assertEquals(2f, stereo[5], 1e-6f);
+        assertEquals(3f, stereo[stride + 5], 1e-6f);
+
+        final float[] mono = new float[stride];
+        plan.render(mono, 0, stride);
+        assertEquals(2.5f, mono[5], 1e-6f);
+    }
+
+    /** Fills every channel c with c + 1. */
+    private static final class ChannelNumbers extends UGen {
+
+        ChannelNumbers(final AudioContext context) {
+            super(context);
+        }
+
+        @Override
+        protected int processChannels(final float[] buffer, final int offset, final int length, final int channels) {
+            final int stride = context.getBlockSize();
+            for (int c = 0; c < context.getChannels(); c++) {
+                for (int i = offset; i < offset + length; i++) {
+                    buffer[c * stride + i] = c + 1;
+                }
+            }
+            return context.getChannels();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.segoh.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.segoh.dsp.Kernels;
+import com.github.segoh.dsp.Wavetable;
+
+/**
+ * Scalar against Vector API block kernels, in ns/sample. Only built with
+ * the vector profile. For whole patches, run SynthBenchmark with
+ * {@code -jvmArgsAppend --add-modules=jdk.incubator.vector} and once more
+ * with {@code -Dspaceage.kernels=scalar} added.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(KernelBenchmark.FRAMES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class KernelBenchmark {
+
+    static final int FRAMES = 4096;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    @Param({"64", "256", "1024"})
+    public int blockSize;
+
+    private Kernels _kernels;
+    private float[] _source;
+    private float[] _target;
+    private short[] _pcm;
+    private float[] _table;
+    private final int[] _indices = new int[Kernels.SCRATCH_INTS];
+
+    @Setup
+    public void setUp() {
+        _kernels = "vector".equals(kernels) ? Kernels.vector() : Kernels.scalar();
+        if (_kernels == null) {
+            throw new IllegalStateException("Vector API not available, run with --add-modules jdk.incubator.vector");
+        }
+        final Random random = new Random(1);
+        _source = new float[blockSize];
+        _target = new float[blockSize];
+        _pcm = new short[blockSize];
+        for (int i = 0; i < blockSize; i++) {
+            _source[i] = 2f * random.nextFloat() - 1f;
+        }
+        _table = Wavetable.saw().getTable(0);
+    }
+
+    @Benchmark
+    public void mix(final Blackhole blackhole) {
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            _kernels.mix(_source, 0, _target, 0, blockSize, 0.5f);
+        }
+        blackhole.consume(_target);
+    }
+
+    /** Scales a fresh copy of the input every block, so it never decays into subnormals. */
+    @Benchmark
+    public void scale(final Blackhole blackhole) {
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            System.arraycopy(_source, 0, _target, 0, blockSize);
+            _kernels.scale(_target, 0, blockSize, 0.5f, 0.5f / blockSize);
+        }
+        blackhole.consume(_target);
+    }
+
+    @Benchmark
+    public float scaleExp() {
+        float level = 0;
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            System.arraycopy(_source, 0, _target, 0, blockSize);
+            level = _kernels.scaleExp(_target, 0, blockSize, 0, 0.25f, 0.005f);
+        }
+        return level;
+    }
+
+    /** Baseline of the copy included in scale and scaleExp. */
+    @Benchmark
+    public void copy(final Blackhole blackhole) {
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            System.arraycopy(_source, 0, _target, 0, blockSize);
+        }
+        blackhole.consume(_target);
+    }
+
+    @Benchmark
+    public float readLinear() {
+        float phase = 0;
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            phase = _kernels.readLinear(_table, _target, 0, blockSize, phase, 0.0123f, _indices);
+        }
+        return phase;
+    }
+
+    @Benchmark
+    public void toPcm16(final Blackhole blackhole) {
+        for (int b = 0; b < FRAMES / blockSize; b++) {
+            _kernels.toPcm16(_source, _pcm, blockSize);
+        }
+        blackhole.consume(_pcm);
+    }
+}
@@ -2,18 +2,38 @@ package com.github.segoh;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.github.segoh.control.Clock;
 import com.github.segoh.control.FreqConversion;
 import com.github.segoh.control.PentatonicFreqConversion;
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.AudioTrackSink;
+import com.github.segoh.dsp.RenderStats;
 
 public class SpaceAgeActivity extends Activity {
 
-    private final Synth _synth = new Synth();
+    private static final String TAG = "SpaceAge";
+    private static final int BLOCK_SIZE = 256;
+
+    private final RenderStats _stats = new RenderStats();
+    private final Synth _synth = new Synth(
+            new AudioContext(AudioTrackSink.getNativeSampleRate(), BLOCK_SIZE, 2),
+            new AudioTrackSink().setStats(_stats),
+            new Clock() {
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+            }).setStats(_stats)
+            .setRenderThreads(Math.min(3, Runtime.getRuntime().availableProcessors() - 1))
+            .setAdaptiveQuality(true);
 
     @Override
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         final SynthView mainView = new SynthView(this);
+        mainView.setPolyphonic(true);
         setUpControls(mainView);
         setContentView(mainView);
     }
@@ -28,6 +48,7 @@ public class SpaceAgeActivity extends Activity {
     protected void onPause() {
         super.onPause();
         _synth.stop();
+        Log.i(TAG, "Audio stats:\n" + _stats);
     }
 
     private void setUpControls(final SynthView view) {
@@ -35,23 +56,26 @@ public class SpaceAgeActivity extends Activity {
 
             private final FreqConversion _freqConv = new PentatonicFreqConversion(SynthView.STEPS);
 
-            public void onNoteOn(final float x, final float y) {
-                _synth.setFreqOsc1(_freqConv.toFreq(x));
-                _synth.setFreqOsc2(_freqConv.toFreq(y));
-                _synth.trigger();
+            public void onNoteOn(final int pointerId, final float x, final float y, final long time) {
+                _synth.trigger(pointerId, _freqConv.toFreq(x), _freqConv.toFreq(y), time);
             }
 
-            public void onNoteOff(final float x, final float y) {
-                _synth.damp();
+            public void onNoteOff(final int pointerId, final float x, final float y, final long time) {
+                _synth.damp(pointerId, time);
             }
 
-            public void onNoteChange(final float x, final float y) {
-                _synth.setFreqOsc1(_freqConv.toFreq(x));
-                _synth.setFreqOsc2(_freqConv.toFreq(y));
+            public void onNoteChange(final int pointerId, final TouchBatch batch) {
+                for (int i = 0; i < batch.size(); i++) {
+                    _synth.glide(pointerId, _freqConv.toFreq(batch.getX(i)), _freqConv.toFreq(batch.getY(i)),
+                            batch.getStartTime(i), batch.getTime(i));
+                }
             }
 
-            public void onControlChange(final float x, final float y) {
-                _synth.setCutoff(400.0f + x * x * 4000f);
+            public void onControlChange(final TouchBatch batch) {
+                for (int i = 0; i < batch.size(); i++) {
+                    final float x = batch.getX(i);
+                    _synth.setCutoff(400.0f + x * x * 4000f, batch.getTime(i));
+                }
             }
         });
     }
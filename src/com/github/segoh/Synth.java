@@ -1,33 +1,179 @@
 package com.github.segoh;
 
+import com.github.segoh.control.Clock;
+import com.github.segoh.control.EventQueue;
+import com.github.segoh.dsp.AdsrEnv;
+import com.github.segoh.dsp.AudioContext;
+import com.github.segoh.dsp.AudioSink;
+import com.github.segoh.dsp.BufferPool;
 import com.github.segoh.dsp.DAC;
 import com.github.segoh.dsp.Delay;
-import com.github.segoh.dsp.ExpEnv;
+import com.github.segoh.dsp.Mixer;
 import com.github.segoh.dsp.MoogLPF;
-import com.github.segoh.dsp.UGen;
+import com.github.segoh.dsp.OfflineRenderer;
+import com.github.segoh.dsp.QualityGovernor;
+import com.github.segoh.dsp.Recorder;
+import com.github.segoh.dsp.RenderPlan;
+import com.github.segoh.dsp.RenderStats;
+import com.github.segoh.dsp.RenderWorkers;
+import com.github.segoh.dsp.Scheduler;
+import com.github.segoh.dsp.Voice;
+import com.github.segoh.dsp.VoiceAllocator;
 import com.github.segoh.dsp.WavetableOsc;
 
-import android.os.Process;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 public class Synth {
 
+    public static final int DEFAULT_VOICES = 4;
+
+    /** No interpolation, half the voices and no delay. */
+    public static final int QUALITY_LOW = 0;
+    /** Linear interpolation, the default. */
+    public static final int QUALITY_NORMAL = 1;
+    /** Cubic interpolation and a 2x oversampled filter. */
+    public static final int QUALITY_HIGH = 2;
+    /** Cubic interpolation and a 4x oversampled filter. */
+    public static final int QUALITY_BEST = 3;
+
+    private static final int EVENT_TRIGGER = 0;
+    private static final int EVENT_DAMP = 1;
+    private static final int EVENT_FREQS = 2;
+    private static final int EVENT_CUTOFF = 3;
+    private static final int EVENT_GAIN = 4;
+    private static final int EVENT_GLIDE = 5;
+    private static final int EVENT_PORTAMENTO = 6;
+
+    /** Longest glide between two touch samples, longer gaps jump first. */
+    private static final long MAX_GLIDE_MILLIS = 50;
+    /** Crossfade between the old and a rebuilt patch. */
+    private static final int SWAP_FADE_BLOCKS = 4;
+
+    private final AudioContext _context;
+    private final AudioSink _sink;
+    private final Clock _clock;
+    private volatile int _voiceCount;
+    private final EventQueue _events = new EventQueue(1024);
+    private final AtomicReference<Patch> _pendingPatch = new AtomicReference<Patch>();
+    private RenderStats _stats = null;
+    private Recorder _recorder = null;
+    private int _renderThreads = 0;
+    private boolean _isAdaptive = false;
+    private volatile QualityGovernor _governor = null;
+    /** Owned by the running start(), shut down by its audio thread. */
+    private volatile RenderWorkers _workers = null;
+    /** Owned by the caller of createOfflineRenderer(). */
+    private volatile RenderWorkers _offlineWorkers = null;
+    private volatile DAC _dac = null;
     private volatile Thread _audioThread = null;
-    private WavetableOsc _osc1 = null;
-    private WavetableOsc _osc2 = null;
-    private ExpEnv _env = null;
-    private MoogLPF _lpf = null;
+    /** Set from start() until the audio thread has closed its DAC. */
+    private volatile boolean _isPlaying = false;
+
+    // Audio thread only, settings carried over to rebuilt patches
+    private Patch _patch = null;
+    private float _cutoff = 1000;
+    private float _gain = 1;
+    private float _portamento = 0;
+    private int _quality = QUALITY_NORMAL;
+
+    public Synth(final AudioContext context, final AudioSink sink) {
+        this(context, sink, new Clock() {
+            public long uptimeMillis() {
+                return System.nanoTime() / 1000000;
+            }
+        });
+    }
+
+    /**
+     * @param clock must use the same time base as the timestamps passed to the
+     *        timed setters while playing live
+     */
+    public Synth(final AudioContext context, final AudioSink sink, final Clock clock) {
+        this(context, sink, clock, DEFAULT_VOICES);
+    }
+
+    public Synth(final AudioContext context, final AudioSink sink, final Clock clock, final int voices) {
+        _context = context;
+        _sink = sink;
+        _clock = clock;
+        _voiceCount = voices;
+    }
+
+    /**
+     * Collect render statistics for the live DAC from the next start() on.
+     */
+    public Synth setStats(final RenderStats stats) {
+        _stats = stats;
+        return this;
+    }
+
+    /**
+     * Feed the live output to a recorder from the next start() on. Start and
+     * stop the recorder itself at any time.
+     */
+    public Synth setRecorder(final Recorder recorder) {
+        _recorder = recorder;
+        return this;
+    }
+
+    /**
+     * Render voices on this many helper threads besides the audio thread,
+     * from the next start() on. 0, the default, renders on the audio thread only.
+     */
+    public Synth setRenderThreads(final int threads) {
+        _renderThreads = threads;
+        return this;
+    }
+
+    /**
+     * Trade sound quality for render time from the next start() on, stepping
+     * down when blocks come close to missing their deadline and back up when
+     * there is plenty of headroom.
+     */
+    public Synth setAdaptiveQuality(final boolean isAdaptive) {
+        _isAdaptive = isAdaptive;
+        return this;
+    }
+
+    /**
+     * @return the quality tier the live patch plays at, one of the QUALITY constants
+     */
+    public int getQuality() {
+        final QualityGovernor governor = _governor;
+        return governor == null ? QUALITY_NORMAL : governor.getTier();
+    }
 
     public void start() {
-        final DAC dac = initUGens(new DAC());
+        final RenderWorkers workers = _renderThreads > 0 ? new RenderWorkers(_renderThreads) : null;
+        _workers = workers;
+        _offlineWorkers = null;
+        final QualityGovernor governor = !_isAdaptive ? null : new QualityGovernor(_context,
+                QUALITY_LOW, QUALITY_BEST, QUALITY_NORMAL, new QualityGovernor.Listener() {
+                    public void onTierChanged(final int tier) {
+                        _quality = tier;
+                        _patch.applyQuality(tier);
+                    }
+                });
+        _governor = governor;
+        final DAC dac = initUGens(new DAC(_context, _sink).setStats(_stats).setRecorder(_recorder)
+                .setGovernor(governor), workers, false);
 
+        _isPlaying = true;
         _audioThread = new Thread(new Runnable() {
             public void run() {
                 dac.open();
-                Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
                 while (_audioThread != null) {
+                    if (dac.isIdle() && isQuiet()) {
+                        sleep(dac);
+                    }
                     dac.tick();
                 }
                 dac.close();
+                if (workers != null) {
+                    workers.shutdown();
+                }
+                _isPlaying = false;
             }
         });
         _audioThread.setPriority(Thread.MAX_PRIORITY);
@@ -35,59 +181,369 @@ public class Synth {
     }
 
     public void stop() {
+        final Thread thread = _audioThread;
         _audioThread = null;
+        LockSupport.unpark(thread);
     }
 
-    private DAC initUGens(final DAC dac) {
-        final Delay delay = new Delay(UGen.SAMPLE_RATE / 4, 0.3f);
+    /**
+     * Park the audio thread with the output paused while the graph is silent
+     * and nothing is queued. The next event or stop() wakes it up again.
+     */
+    private void sleep(final DAC dac) {
+        dac.pause();
+        while (_audioThread != null && isQuiet()) {
+            LockSupport.park(this);
+        }
+        dac.resume();
+    }
 
-        _env = new ExpEnv();
-        _env.setFactor(ExpEnv.FACTOR_HARD);
+    private boolean isQuiet() {
+        return _events.isEmpty() && _pendingPatch.get() == null;
+    }
 
-        _osc1 = new WavetableOsc();
-        _osc1.fillWithSaw();
-        _osc1.setFreq(100);
+    private void post(final int type, final int key, final long time, final float value1, final float value2) {
+        post(type, key, time, value1, value2, 0);
+    }
 
-        _osc2 = new WavetableOsc();
-        _osc2.fillWithSqr();
-        _osc2.setFreq(100);
+    private void post(final int type, final int key, final long time,
+            final float value1, final float value2, final float value3) {
+        _events.offer(type, key, time, value1, value2, value3);
+        LockSupport.unpark(_audioThread);
+    }
 
-        _lpf = new MoogLPF(1000, 0.6f);
+    /**
+     * Build a fresh copy of the patch for rendering without an audio device.
+     * The setters of this synth control the returned graph until the next start().
+     * Their timestamps count milliseconds of rendered audio from the first
+     * rendered frame, the clock is not used.
+     * @throws IllegalStateException if the synth is playing, stop() it first
+     */
+    public OfflineRenderer createOfflineRenderer(final AudioSink sink) {
+        return createOfflineRenderer(sink, null);
+    }
 
-        _osc1.chuck(_env);
-        _osc2.chuck(_env);
-        _env.chuck(_lpf).chuck(delay).chuck(dac);
+    /**
+     * @param workers render voices in parallel on these, owned by the caller
+     */
+    public OfflineRenderer createOfflineRenderer(final AudioSink sink, final RenderWorkers workers) {
+        // The live audio thread would pick up the offline patch and events
+        if (_isPlaying) {
+            throw new IllegalStateException("Cannot render offline while the synth is playing");
+        }
+        _offlineWorkers = workers;
+        return new OfflineRenderer(initUGens(new DAC(_context, sink), workers, true));
+    }
 
+    private DAC initUGens(final DAC dac, final RenderWorkers workers, final boolean isOffline) {
+        _patch = null;
+        _quality = QUALITY_NORMAL;
+        _pendingPatch.set(new Patch(_voiceCount, _stats, workers));
+        dac.setScheduler(new EventScheduler(dac, isOffline));
+        _dac = dac;
         return dac;
     }
 
-    public Synth setFreqOsc1(final float freq) {
-        _osc1.setFreq(freq);
+    /**
+     * Rebuild the patch with a different number of voices while playing.
+     * The new graph is built and compiled on the calling thread and
+     * crossfaded in at a block boundary, playing notes fade out with the old one.
+     */
+    public Synth setVoiceCount(final int voices) {
+        _voiceCount = voices;
+        final DAC dac = _dac;
+        if (dac != null) {
+            dac.pollRetired(); // Drop the previous patch here, not on the audio thread
+            _pendingPatch.set(new Patch(voices, _stats, _isPlaying ? _workers : _offlineWorkers));
+            LockSupport.unpark(_audioThread);
+        }
         return this;
     }
 
-    public Synth setFreqOsc2(final float freq) {
-        _osc2.setFreq(freq);
+    public int getVoiceCount() {
+        return _voiceCount;
+    }
+
+    /*
+     * All setters queue the change for the audio thread. The timed ones take
+     * effect at the frame matching the timestamp, one block later than it
+     * happened when playing live, the others at the start of the next block.
+     * Offline, timestamps are milliseconds of rendered audio instead. Call them from a
+     * single thread only. Notes are identified by a key, e.g. a pointer id.
+     * Each one wakes the audio thread if it went to sleep on silence.
+     */
+
+    public Synth trigger(final int key, final float freq1, final float freq2, final long time) {
+        post(EVENT_TRIGGER, key, time, freq1, freq2);
         return this;
     }
 
-    public Synth setGain(final float gain) {
-        _env.setGain(gain);
+    public Synth damp(final int key, final long time) {
+        post(EVENT_DAMP, key, time, 0, 0);
         return this;
     }
 
-    public Synth setCutoff(final float cutoff) {
-        _lpf.setCutoff(cutoff);
+    public Synth setFreqs(final int key, final float freq1, final float freq2, final long time) {
+        post(EVENT_FREQS, key, time, freq1, freq2);
         return this;
     }
 
-    public Synth trigger() {
-        _env.setActive(true);
+    /**
+     * Slide the frequencies of a note so that they arrive at endTime, e.g.
+     * from one touch sample to the next.
+     */
+    public Synth glide(final int key, final float freq1, final float freq2, final long startTime, final long endTime) {
+        final long start = Math.max(startTime, endTime - MAX_GLIDE_MILLIS);
+        post(EVENT_GLIDE, key, start, freq1, freq2, endTime - start);
+        return this;
+    }
+
+    public Synth setCutoff(final float cutoff, final long time) {
+        post(EVENT_CUTOFF, VoiceAllocator.NO_KEY, time, cutoff, 0);
+        return this;
+    }
+
+    public Synth setCutoff(final float cutoff) {
+        return setCutoff(cutoff, Long.MIN_VALUE);
+    }
+
+    /**
+     * Time in seconds a playing note takes to slide to the frequencies given
+     * by setFreqs(). New notes always start at their frequency.
+     */
+    public Synth setPortamento(final float seconds) {
+        post(EVENT_PORTAMENTO, VoiceAllocator.NO_KEY, Long.MIN_VALUE, seconds, 0);
         return this;
     }
 
-    public Synth damp() {
-        _env.setActive(false);
+    public Synth setGain(final float gain) {
+        post(EVENT_GAIN, VoiceAllocator.NO_KEY, Long.MIN_VALUE, gain, 0);
         return this;
     }
+
+    private void apply(final int type, final int key, final float value1, final float value2, final float value3) {
+        final VoiceAllocator voices = _patch.voices;
+        switch (type) {
+            case EVENT_TRIGGER: {
+                final SynthVoice voice = (SynthVoice)voices.noteOn(key);
+                voice.jumpFreqs(value1, value2);
+                voice.env.noteOn();
+                break;
+            }
+            case EVENT_DAMP: {
+                final SynthVoice voice = (SynthVoice)voices.noteOff(key);
+                if (voice != null) {
+                    voice.env.noteOff();
+                }
+                break;
+            }
+            case EVENT_FREQS: {
+                final SynthVoice voice = (SynthVoice)voices.find(key);
+                if (voice != null) {
+                    voice.setFreqs(value1, value2);
+                }
+                break;
+            }
+            case EVENT_GLIDE: {
+                final SynthVoice voice = (SynthVoice)voices.find(key);
+                if (voice != null) {
+                    voice.glideFreqs(value1, value2, (int)(value3 * _context.getSampleRate() / 1000));
+                }
+                break;
+            }
+            case EVENT_CUTOFF:
+                _cutoff = value1;
+                _patch.lpf.setCutoff(value1);
+                break;
+            case EVENT_PORTAMENTO:
+                _portamento = value1;
+                _patch.applyVoiceSettings(_gain, _portamento);
+                break;
+            case EVENT_GAIN:
+                _gain = value1;
+                _patch.applyVoiceSettings(_gain, _portamento);
+                break;
+        }
+    }
+
+    /**
+     * One complete graph with its compiled plan. Built off the audio thread
+     * and never changed once published.
+     */
+    private final class Patch {
+
+        final VoiceAllocator voices;
+        final MoogLPF lpf;
+        final Delay delay;
+        final RenderPlan plan;
+
+        Patch(final int voiceCount, final RenderStats stats, final RenderWorkers workers) {
+            // Voices rendered one after another share their buffers
+            final BufferPool buffers = workers == null ? new BufferPool(_context) : null;
+            final Voice[] pool = new Voice[voiceCount];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = new SynthVoice(_context, buffers != null ? buffers : new BufferPool(_context));
+            }
+            voices = new VoiceAllocator(_context, pool).setWorkers(workers);
+            voices.setGain(1f / (float)Math.sqrt(voiceCount));
+
+            lpf = new MoogLPF(_context, 1000, 0.6f);
+            delay = new Delay(_context, _context.getSampleRate() / 4, 0.3f);
+            delay.setPingPong(true); // The only stereo node, the voices stay mono
+
+            voices.chuck(lpf).chuck(delay);
+            plan = RenderPlan.compileOutput(delay, stats);
+        }
+
+        void applyVoiceSettings(final float gain, final float portamento) {
+            for (int i = 0; i < voices.getVoiceCount(); i++) {
+                final SynthVoice voice = (SynthVoice)voices.getVoice(i);
+                voice.env.setGain(SynthVoice.GAIN * gain);
+                voice.setPortamento(portamento);
+            }
+        }
+
+        void applyQuality(final int quality) {
+            final int interpolation = quality == QUALITY_LOW ? WavetableOsc.INTERPOLATE_NONE
+                    : quality == QUALITY_NORMAL ? WavetableOsc.INTERPOLATE_LINEAR : WavetableOsc.INTERPOLATE_CUBIC;
+            for (int i = 0; i < voices.getVoiceCount(); i++) {
+                final SynthVoice voice = (SynthVoice)voices.getVoice(i);
+                voice.osc1.setInterpolation(interpolation);
+                voice.osc2.setInterpolation(interpolation);
+            }
+            final int voiceCount = voices.getVoiceCount();
+            voices.setVoiceLimit(quality == QUALITY_LOW ? (voiceCount + 1) / 2 : voiceCount);
+            lpf.setOversampling(quality == QUALITY_BEST ? 4 : quality == QUALITY_HIGH ? 2 : 1);
+            delay.setEnabled(quality != QUALITY_LOW);
+        }
+    }
+
+    /**
+     * Two oscillators mixed into an envelope.
+     */
+    private static final class SynthVoice extends Voice {
+
+        /** Headroom for several voices. */
+        static final float GAIN = 0.25f;
+
+        final WavetableOsc osc1;
+        final WavetableOsc osc2;
+        final AdsrEnv env;
+        private final RenderPlan _plan;
+
+        /**
+         * @param buffers the pool of the thread rendering this voice
+         */
+        SynthVoice(final AudioContext context, final BufferPool buffers) {
+            super(context);
+            osc1 = new WavetableOsc(context);
+            osc2 = new WavetableOsc(context);
+            env = new AdsrEnv(context).set(0.01f, 0.3f, 0.7f, 0.08f).setGain(GAIN);
+            osc1.fillWithSaw();
+            osc1.setFreq(100);
+            osc2.fillWithSqr();
+            osc2.setFreq(100);
+            final Mixer mixer = new Mixer(context, buffers);
+            mixer.addInput(osc1);
+            mixer.addInput(osc2);
+            mixer.chuck(env);
+            env.chuck(this);
+            _plan = RenderPlan.compile(this, null, buffers);
+        }
+
+        void setFreqs(final float freq1, final float freq2) {
+            osc1.setFreq(freq1);
+            osc2.setFreq(freq2);
+        }
+
+        void jumpFreqs(final float freq1, final float freq2) {
+            osc1.glideTo(freq1, 0);
+            osc2.glideTo(freq2, 0);
+        }
+
+        void setPortamento(final float seconds) {
+            osc1.setPortamento(seconds);
+            osc2.setPortamento(seconds);
+        }
+
+        void glideFreqs(final float freq1, final float freq2, final int frames) {
+            osc1.glideTo(freq1, frames);
+            osc2.glideTo(freq2, frames);
+        }
+
+        @Override
+        public float getLevel() {
+            return env.getLevel();
+        }
+
+        @Override
+        public boolean render(final float[] buffer, final int offset, final int length) {
+            if (env.isFinished()) {
+                return false;
+            }
+            return _plan.render(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Maps event timestamps onto frames with a constant latency of one block.
+     * Events from the last block period land at their relative position in
+     * the block being rendered, late events at its start. Offline, the time
+     * of a block is the audio rendered before it, and events land at their
+     * own frame without latency.
+     */
+    private final class EventScheduler implements Scheduler {
+
+        private final double _blockMillis = _context.getBlockMillis();
+        private final double _framesPerMilli = _context.getSampleRate() / 1000.0;
+        private final int _blockSize = _context.getBlockSize();
+        private double _blockTime = Double.NaN;
+        private final DAC _target;
+        private final boolean _isOffline;
+        private long _framesRendered = 0;
+
+        EventScheduler(final DAC dac, final boolean isOffline) {
+            _target = dac;
+            _isOffline = isOffline;
+        }
+
+        public void beginBlock() {
+            final Patch next = _pendingPatch.getAndSet(null);
+            if (next != null) {
+                final boolean isFirst = _patch == null;
+                _patch = next;
+                next.lpf.setCutoff(_cutoff);
+                next.applyVoiceSettings(_gain, _portamento);
+                next.applyQuality(_quality);
+                _target.swap(next.plan, isFirst ? 0 : SWAP_FADE_BLOCKS);
+            }
+
+            if (_isOffline) {
+                // The window of this block starts where the rendered audio ends
+                _blockTime = _framesRendered / _framesPerMilli + _blockMillis;
+                _framesRendered += _blockSize;
+                return;
+            }
+            final long now = _clock.uptimeMillis();
+            final double expected = _blockTime + _blockMillis;
+            // Follow a steady block clock, only resync when it drifts too far
+            final boolean isDrifting = Double.isNaN(expected) || Math.abs(now - expected) > _blockMillis;
+            _blockTime = isDrifting ? now : expected;
+        }
+
+        public int dispatch(final int frame) {
+            final EventQueue events = _events;
+            final double windowStart = _blockTime - _blockMillis;
+            while (!events.isEmpty()) {
+                final double due = (events.peekTime() - windowStart) * _framesPerMilli;
+                if (due > frame) {
+                    return (int)Math.min(due, _blockSize);
+                }
+                apply(events.peekType(), events.peekKey(), events.peekValue1(), events.peekValue2(),
+                        events.peekValue3());
+                events.remove();
+            }
+            return _blockSize;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.github.segoh;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -11,20 +12,39 @@ import android.view.View;
 public class SynthView extends View {
 
     public static int STEPS = 11;
+    public static final int MAX_POINTERS = 10;
 
     private static final float TOUCH_TOLERANCE = 3f;
+    /** Background alpha changes in steps, each one repaints the whole view. */
+    private static final int ALPHA_STEP = 16;
+    /** Room for blur and stroke around dirty regions. */
+    private static final int GLOW_PADDING = 12;
 
     private final int[] _colors = ColorTheme.PEAR_LEMON_FIZZ;
     private final Paint _primaryPaint;
     private final Paint _secondaryPaint;
     private final Paint _bgPaint;
-    private final Pointer _primaryPointer = new Pointer();
-    private final Pointer _secondaryPointer = new Pointer();
+    private final Paint _bitmapPaint;
+    private final BlurMaskFilter _playingFilter = new BlurMaskFilter(2, BlurMaskFilter.Blur.SOLID);
+    private final BlurMaskFilter _idleFilter = new BlurMaskFilter(7, BlurMaskFilter.Blur.NORMAL);
+    private Bitmap _background = null;
+    private float _stepX = 1;
+    private float _stepY = 1;
+    private final Pointer[] _pointers = new Pointer[MAX_POINTERS];
+    private final Pointer _lastNote = new Pointer();
+    private final Pointer _control = new Pointer();
+    private final TouchBatch _batch = new TouchBatch();
+    private int _noteCount = 0;
+    private boolean _isPolyphonic = false;
     private SynthViewListener _synthListener = null;
 
     public SynthView(final Context context) {
         super(context);
 
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            _pointers[i] = new Pointer();
+        }
+
         _primaryPaint = new Paint();
         _primaryPaint.setAntiAlias(true);
         _primaryPaint.setDither(true);
@@ -34,105 +54,158 @@ public class SynthView extends View {
         _secondaryPaint = new Paint();
         _secondaryPaint.setStyle(Paint.Style.STROKE);
         _secondaryPaint.setStrokeWidth(3);
-        _secondaryPaint.setMaskFilter(new BlurMaskFilter(7, BlurMaskFilter.Blur.NORMAL));
+        _secondaryPaint.setMaskFilter(_idleFilter);
         updateColor(_secondaryPaint, 0, 0);
 
         _bgPaint = new Paint();
         _bgPaint.setStyle(Paint.Style.FILL_AND_STROKE);
         _bgPaint.setStrokeWidth(1);
 
-        onActionMainEnd();
+        _bitmapPaint = new Paint();
+
+        onNotesEnd();
+    }
+
+    /**
+     * In polyphonic mode every pointer plays a note. Otherwise only the first
+     * pointer does and the second one is a control.
+     */
+    public void setPolyphonic(final boolean isPolyphonic) {
+        _isPolyphonic = isPolyphonic;
     }
 
     private void updateColor(final Paint paint, final int fieldX, final int fieldY) {
         paint.setColor(_colors[(fieldX + (STEPS - 1 - fieldY)) % _colors.length]);
     }
 
+    /**
+     * Render the grid once per size at full alpha. onDraw fades it with the
+     * paint alpha, so control changes never repaint the cells.
+     */
     @Override
-    protected void onDraw(final Canvas canvas) {
-        final float stepX = ((float)canvas.getWidth()) / STEPS;
-        final float stepY = ((float)canvas.getHeight()) / STEPS;
-        final int alpha = 35 + (int)(_secondaryPointer.getX() / canvas.getHeight() * 220);
-
-        canvas.drawColor(Color.BLACK);
+    protected void onSizeChanged(final int width, final int height, final int oldWidth, final int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        _stepX = ((float)width) / STEPS;
+        _stepY = ((float)height) / STEPS;
+        if (_background != null) {
+            _background.recycle();
+            _background = null;
+        }
+        if (width == 0 || height == 0) {
+            return;
+        }
+        _background = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(_background);
 
-        // Draw background
-        final int offset = (int)(stepX * 0.45);
+        final int offset = (int)(_stepX * 0.45);
         for (int fieldX = 0; fieldX < STEPS; ++fieldX) {
             for (int fieldY = 0; fieldY < STEPS; ++fieldY) {
-                final float x = fieldX * stepX;
-                final float y = fieldY * stepY;
+                final float x = fieldX * _stepX;
+                final float y = fieldY * _stepY;
                 updateColor(_bgPaint, fieldX, fieldY);
-                _bgPaint.setAlpha(alpha);
-                canvas.drawRect(x + offset, y + offset, x + stepX - offset, y + stepY - offset, _bgPaint);
+                canvas.drawRect(x + offset, y + offset, x + _stepX - offset, y + _stepY - offset, _bgPaint);
             }
         }
+    }
 
-        // Draw secondary position
-        canvas.drawLine(_secondaryPointer.getX(), 0, _secondaryPointer.getX(), canvas.getHeight(), _secondaryPaint);
+    private int alphaFor(final float controlX) {
+        final int alpha = (int)(controlX / Math.max(1, getHeight()) * 220);
+        return 35 + alpha - alpha % ALPHA_STEP;
+    }
 
-        // Draw primary position
-        final float currentX = _primaryPointer.getX() - (_primaryPointer.getX() % stepX);
-        final float currentY = _primaryPointer.getY() - (_primaryPointer.getY() % stepY);
-        updateColor(_primaryPaint, (int)(currentX / stepX), (int)(currentY / stepY));
-        canvas.drawRect(currentX, currentY, currentX + stepX, currentY + stepY, _primaryPaint);
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        canvas.drawColor(Color.BLACK);
+
+        // Draw background
+        if (_background != null) {
+            _bitmapPaint.setAlpha(alphaFor(_control.getX()));
+            canvas.drawBitmap(_background, 0, 0, _bitmapPaint);
+        }
+
+        // Draw control position
+        canvas.drawLine(_control.getX(), 0, _control.getX(), getHeight(), _secondaryPaint);
+
+        // Draw note positions
+        if (_noteCount == 0) {
+            drawNote(canvas, _lastNote);
+        }
+        for (final Pointer pointer : _pointers) {
+            if (pointer.isActive() && !pointer.isControl()) {
+                drawNote(canvas, pointer);
+            }
+        }
+    }
+
+    private int cellX(final float x) {
+        return Math.max(0, Math.min(STEPS - 1, (int)(x / _stepX)));
+    }
+
+    private int cellY(final float y) {
+        return Math.max(0, Math.min(STEPS - 1, (int)(y / _stepY)));
+    }
+
+    private void drawNote(final Canvas canvas, final Pointer pointer) {
+        final int fieldX = cellX(pointer.getX());
+        final int fieldY = cellY(pointer.getY());
+        final float currentX = fieldX * _stepX;
+        final float currentY = fieldY * _stepY;
+        updateColor(_primaryPaint, fieldX, fieldY);
+        canvas.drawRect(currentX, currentY, currentX + _stepX, currentY + _stepY, _primaryPaint);
+    }
+
+    private void invalidateCell(final float x, final float y) {
+        final int left = (int)(cellX(x) * _stepX);
+        final int top = (int)(cellY(y) * _stepY);
+        invalidate(left - GLOW_PADDING, top - GLOW_PADDING,
+                (int)(left + _stepX) + GLOW_PADDING, (int)(top + _stepY) + GLOW_PADDING);
+    }
+
+    private void invalidateLine(final float x) {
+        invalidate((int)x - GLOW_PADDING, 0, (int)x + GLOW_PADDING, getHeight());
     }
 
     @Override
     final public boolean onTouchEvent(final MotionEvent event) {
         final int action = event.getAction();
+        final long time = event.getEventTime();
 
         switch (action & MotionEvent.ACTION_MASK) {
-            case MotionEvent.ACTION_DOWN: {
-                _primaryPointer.setId(event.getPointerId(0));
-                onActionMainStart();
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                final int pointerIndex = (action & MotionEvent.ACTION_POINTER_INDEX_MASK)
+                        >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+                onPointerDown(event, pointerIndex, time);
                 invalidate();
                 break;
             }
             case MotionEvent.ACTION_MOVE: {
-                final boolean isMainUpdated = _primaryPointer.update(event);
-                if (isMainUpdated) {
-                    onActionMainMove();
-                    invalidate();
+                for (final Pointer pointer : _pointers) {
+                    final float oldX = pointer.getX();
+                    final float oldY = pointer.getY();
+                    if (pointer.update(event, _batch)) {
+                        onPointerMove(pointer);
+                        invalidateMove(pointer, oldX, oldY);
+                    }
                 }
-                final boolean isUtilityUpdated = _secondaryPointer.update(event);
-                if (isUtilityUpdated) {
-                    onActionUtilityMode();
-                    invalidate();
-                }
-                break;
-            }
-            case MotionEvent.ACTION_UP: {
-                _primaryPointer.invalidate();
-                _secondaryPointer.invalidate();
-                onActionMainEnd();
-                invalidate();
-                break;
-            }
-            case MotionEvent.ACTION_CANCEL: {
-                _primaryPointer.invalidate();
-                _secondaryPointer.invalidate();
-                onActionMainEnd();
-                invalidate();
                 break;
             }
-            case MotionEvent.ACTION_POINTER_DOWN: {
+            case MotionEvent.ACTION_POINTER_UP: {
                 final int pointerIndex = (action & MotionEvent.ACTION_POINTER_INDEX_MASK)
                         >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
-                final int pointerId = event.getPointerId(pointerIndex);
-                final Pointer newPointer = _primaryPointer.isActive() ? _secondaryPointer : _primaryPointer;
-                newPointer.setId(pointerId);
+                final Pointer pointer = findPointer(event.getPointerId(pointerIndex));
+                if (pointer != null) {
+                    onPointerUp(pointer, time);
+                }
                 invalidate();
                 break;
             }
-            case MotionEvent.ACTION_POINTER_UP: {
-                final int pointerIndex = (action & MotionEvent.ACTION_POINTER_INDEX_MASK)
-                        >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
-                final int pointerId = event.getPointerId(pointerIndex);
-                if (_primaryPointer.isPointer(pointerId)) {
-                    _primaryPointer.invalidate();
-                } else {
-                    _secondaryPointer.invalidate();
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                for (final Pointer pointer : _pointers) {
+                    if (pointer.isActive()) {
+                        onPointerUp(pointer, time);
+                    }
                 }
                 invalidate();
                 break;
@@ -142,49 +215,126 @@ public class SynthView extends View {
         return true;
     }
 
+    /**
+     * Only repaint what a move changed: the old and new cell of a note, or
+     * the old and new control line as long as the background keeps its alpha.
+     */
+    private void invalidateMove(final Pointer pointer, final float oldX, final float oldY) {
+        if (pointer.isControl()) {
+            if (alphaFor(oldX) != alphaFor(pointer.getX())) {
+                invalidate();
+            } else {
+                invalidateLine(oldX);
+                invalidateLine(pointer.getX());
+            }
+        } else if (cellX(oldX) != cellX(pointer.getX()) || cellY(oldY) != cellY(pointer.getY())) {
+            invalidateCell(oldX, oldY);
+            invalidateCell(pointer.getX(), pointer.getY());
+        }
+    }
+
     public void setSynthViewListener(final SynthViewListener listener) {
         _synthListener = listener;
     }
 
-    private void onActionMainStart() {
-        _primaryPaint.setStrokeWidth(1);
-        _primaryPaint.setMaskFilter(new BlurMaskFilter(2, BlurMaskFilter.Blur.SOLID));
-        _secondaryPaint.setAlpha(255);
+    private Pointer findPointer(final int pointerId) {
+        for (final Pointer pointer : _pointers) {
+            if (pointer.isPointer(pointerId)) {
+                return pointer;
+            }
+        }
+        return null;
+    }
 
-        if (_synthListener != null) {
-            _synthListener.onNoteOn(_primaryPointer.normalizedX(), _primaryPointer.normalizedY());
+    private boolean hasControl() {
+        for (final Pointer pointer : _pointers) {
+            if (pointer.isActive() && pointer.isControl()) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void onActionMainEnd() {
-        _primaryPaint.setStrokeWidth(5);
-        _primaryPaint.setMaskFilter(new BlurMaskFilter(7, BlurMaskFilter.Blur.NORMAL));
-        _secondaryPaint.setAlpha(0);
+    private void onPointerDown(final MotionEvent event, final int pointerIndex, final long time) {
+        final Pointer pointer = findPointer(Pointer.INVALID_ID);
+        if (pointer == null) {
+            return; // More fingers than we track
+        }
+        final boolean isNote = _isPolyphonic || _noteCount == 0;
+        if (!isNote && hasControl()) {
+            return;
+        }
+        pointer.setId(event.getPointerId(pointerIndex));
+        pointer.setX(event.getX(pointerIndex));
+        pointer.setY(event.getY(pointerIndex));
+        pointer.setTime(time);
+        pointer.setControl(!isNote);
+
+        if (isNote) {
+            if (_noteCount++ == 0) {
+                onNotesStart();
+            }
+            if (_synthListener != null) {
+                _synthListener.onNoteOn(pointer.getId(), pointer.normalizedX(), pointer.normalizedY(), time);
+            }
+        } else {
+            _batch.clear(time);
+            _batch.add(pointer.normalizedX(), pointer.normalizedY(), time);
+            onControlMove(pointer, _batch);
+        }
+    }
 
-        if (_synthListener != null) {
-            _synthListener.onNoteOff(_primaryPointer.normalizedX(), _primaryPointer.normalizedY());
+    private void onPointerMove(final Pointer pointer) {
+        if (pointer.isControl()) {
+            onControlMove(pointer, _batch);
+        } else if (_synthListener != null) {
+            _synthListener.onNoteChange(pointer.getId(), _batch);
         }
     }
 
-    private void onActionMainMove() {
-        if (_synthListener != null) {
-            _synthListener.onNoteChange(_primaryPointer.normalizedX(), _primaryPointer.normalizedY());
+    private void onPointerUp(final Pointer pointer, final long time) {
+        if (!pointer.isControl()) {
+            if (_synthListener != null) {
+                _synthListener.onNoteOff(pointer.getId(), pointer.normalizedX(), pointer.normalizedY(), time);
+            }
+            _lastNote.setX(pointer.getX());
+            _lastNote.setY(pointer.getY());
+            if (--_noteCount == 0) {
+                onNotesEnd();
+            }
         }
+        pointer.invalidate();
     }
 
-    private void onActionUtilityMode() {
+    private void onControlMove(final Pointer pointer, final TouchBatch batch) {
+        _control.setX(pointer.getX());
+        _control.setY(pointer.getY());
         if (_synthListener != null) {
-            _synthListener.onControlChange(_secondaryPointer.normalizedX(), _secondaryPointer.normalizedY());
+            _synthListener.onControlChange(batch);
         }
     }
 
+    private void onNotesStart() {
+        _primaryPaint.setStrokeWidth(1);
+        _primaryPaint.setMaskFilter(_playingFilter);
+        _secondaryPaint.setAlpha(255);
+    }
+
+    private void onNotesEnd() {
+        _primaryPaint.setStrokeWidth(5);
+        _primaryPaint.setMaskFilter(_idleFilter);
+        _secondaryPaint.setAlpha(0);
+    }
+
 
     final class Pointer {
 
-        private static final int INVALID_ID = -1;
+        static final int INVALID_ID = -1;
         private int _pointerId;
         private float _x;
         private float _y;
+        private long _time;
+        private boolean _isControl;
 
         Pointer() {
             _pointerId = INVALID_ID;
@@ -224,36 +374,66 @@ public class SynthView extends View {
             return _y;
         }
 
+        public void setTime(final long time) {
+            _time = time;
+        }
+
         public void setId(final int pointerId) {
             _pointerId = pointerId;
         }
 
+        public int getId() {
+            return _pointerId;
+        }
+
+        public void setControl(final boolean isControl) {
+            _isControl = isControl;
+        }
+
+        public boolean isControl() {
+            return _isControl;
+        }
+
         public boolean isActive() {
             return _pointerId != INVALID_ID;
         }
 
         public boolean isPointer(final int activeId) {
-            return _pointerId != INVALID_ID && activeId == _pointerId;
+            return activeId == _pointerId;
         }
 
         public int indexForId(final MotionEvent event) {
             return _pointerId == INVALID_ID ? -1 : event.findPointerIndex(_pointerId);
         }
 
-        public boolean update(final MotionEvent event) {
+        /**
+         * Collect the historical and current samples of this pointer that
+         * moved at least TOUCH_TOLERANCE into the batch.
+         * @return true if the pointer moved
+         */
+        public boolean update(final MotionEvent event, final TouchBatch batch) {
             final int pointerIndex = indexForId(event);
-            if (pointerIndex > -1) {
-                final float x = event.getX(pointerIndex);
-                final float y = event.getY(pointerIndex);
-                final float delta = Math.max(Math.abs(x - _x), Math.abs(y - _y));
-
-                if (delta >= TOUCH_TOLERANCE) {
-                    _x = x;
-                    _y = y;
-                    return true;
-                }
+            if (pointerIndex < 0) {
+                return false;
+            }
+            batch.clear(_time);
+            final int history = event.getHistorySize();
+            for (int h = 0; h < history; h++) {
+                add(batch, event.getHistoricalX(pointerIndex, h), event.getHistoricalY(pointerIndex, h),
+                        event.getHistoricalEventTime(h));
+            }
+            add(batch, event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
+            return batch.size() > 0;
+        }
+
+        private void add(final TouchBatch batch, final float x, final float y, final long time) {
+            final float delta = Math.max(Math.abs(x - _x), Math.abs(y - _y));
+            if (delta >= TOUCH_TOLERANCE) {
+                _x = x;
+                _y = y;
+                _time = time;
+                batch.add(normalizedX(), normalizedY(), time);
             }
-            return false;
         }
     }
 }
@@ -1,12 +1,20 @@
 package com.github.segoh;
 
+/**
+ * Receives the gestures of a SynthView. Notes are identified by the id of
+ * the pointer playing them. Times are MotionEvent event times, in the
+ * android.os.SystemClock.uptimeMillis() time base.
+ */
 public interface SynthViewListener {
 
-    void onNoteOn(float x, float y);
+    void onNoteOn(int pointerId, float x, float y, long time);
 
-    void onNoteOff(float x, float y);
+    void onNoteOff(int pointerId, float x, float y, long time);
 
-    void onNoteChange(float x, float y);
+    /**
+     * @param batch every sample since the last call, including historical ones
+     */
+    void onNoteChange(int pointerId, TouchBatch batch);
 
-    void onControlChange(float x, float y);
+    void onControlChange(TouchBatch batch);
 }
@@ -0,0 +1,59 @@
+package com.github.segoh;
+
+/**
+ * The samples of one pointer delivered by a single MotionEvent, oldest
+ * first, with positions normalized to [0, 1]. The view reuses one batch,
+ * so it is only valid during the listener callback.
+ */
+public final class TouchBatch {
+
+    public static final int CAPACITY = 64;
+
+    private final float[] _xs = new float[CAPACITY];
+    private final float[] _ys = new float[CAPACITY];
+    private final long[] _times = new long[CAPACITY];
+    private int _size = 0;
+    private long _startTime;
+
+    /**
+     * @param startTime time of the last sample before this batch
+     */
+    void clear(final long startTime) {
+        _size = 0;
+        _startTime = startTime;
+    }
+
+    /**
+     * Append a sample. A full batch replaces its last sample, so the
+     * newest position is never lost.
+     */
+    void add(final float x, final float y, final long time) {
+        final int index = _size < CAPACITY ? _size++ : CAPACITY - 1;
+        _xs[index] = x;
+        _ys[index] = y;
+        _times[index] = time;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public float getX(final int index) {
+        return _xs[index];
+    }
+
+    public float getY(final int index) {
+        return _ys[index];
+    }
+
+    public long getTime(final int index) {
+        return _times[index];
+    }
+
+    /**
+     * @return the time of the previous sample, where a move to this one starts
+     */
+    public long getStartTime(final int index) {
+        return index == 0 ? _startTime : _times[index - 1];
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.segoh.control;
+
+/**
+ * Source of the timestamps attached to control events, in milliseconds.
+ */
+public interface Clock {
+
+    long uptimeMillis();
+}
@@ -0,0 +1,95 @@
+package com.github.segoh.control;
+
+/**
+ * Preallocated, lock-free ring of timestamped control events.
+ * Safe for exactly one producer thread (the UI) and one consumer thread
+ * (the audio thread). Neither side allocates or blocks.
+ */
+public class EventQueue {
+
+    private final int _mask;
+    private final int[] _types;
+    private final int[] _keys;
+    private final long[] _times;
+    private final float[] _values1;
+    private final float[] _values2;
+    private final float[] _values3;
+    private volatile int _head = 0;  // next slot to read, written by the consumer
+    private volatile int _tail = 0;  // next slot to write, written by the producer
+
+    /**
+     * @param capacity a power of two
+     */
+    public EventQueue(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        _mask = capacity - 1;
+        _types = new int[capacity];
+        _keys = new int[capacity];
+        _times = new long[capacity];
+        _values1 = new float[capacity];
+        _values2 = new float[capacity];
+        _values3 = new float[capacity];
+    }
+
+    /**
+     * Producer side.
+     * @return false if the queue is full and the event was dropped
+     */
+    public boolean offer(final int type, final int key, final long time, final float value1, final float value2) {
+        return offer(type, key, time, value1, value2, 0);
+    }
+
+    public boolean offer(final int type, final int key, final long time,
+            final float value1, final float value2, final float value3) {
+        final int tail = _tail;
+        if (tail - _head > _mask) {
+            return false;
+        }
+        final int slot = tail & _mask;
+        _types[slot] = type;
+        _keys[slot] = key;
+        _times[slot] = time;
+        _values1[slot] = value1;
+        _values2[slot] = value2;
+        _values3[slot] = value3;
+        _tail = tail + 1;
+        return true;
+    }
+
+    /**
+     * Consumer side. The peek methods are only valid while this returns false.
+     */
+    public boolean isEmpty() {
+        return _head == _tail;
+    }
+
+    public int peekType() {
+        return _types[_head & _mask];
+    }
+
+    public int peekKey() {
+        return _keys[_head & _mask];
+    }
+
+    public long peekTime() {
+        return _times[_head & _mask];
+    }
+
+    public float peekValue1() {
+        return _values1[_head & _mask];
+    }
+
+    public float peekValue2() {
+        return _values2[_head & _mask];
+    }
+
+    public float peekValue3() {
+        return _values3[_head & _mask];
+    }
+
+    public void remove() {
+        _head = _head + 1;
+    }
+}
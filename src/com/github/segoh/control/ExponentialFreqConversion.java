@@ -0,0 +1,29 @@
+package com.github.segoh.control;
+
+/**
+ * Continuous mapping that is linear in pitch: equal distances are equal
+ * intervals. Interpolates a precomputed table instead of calling Math.pow.
+ */
+public class ExponentialFreqConversion implements FreqConversion {
+
+    private static final int TABLE_SIZE = 1024;
+
+    private final float[] _table = new float[TABLE_SIZE + 1];
+
+    /**
+     * @param minFreq frequency at 0
+     * @param octaves range up to 1
+     */
+    public ExponentialFreqConversion(final float minFreq, final float octaves) {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            _table[i] = (float)(minFreq * Math.pow(2.0, octaves * i / TABLE_SIZE));
+        }
+    }
+
+    public float toFreq(final float value) {
+        final float scaled = Math.max(0, Math.min(value, 1)) * TABLE_SIZE;
+        final int index = Math.min((int)scaled, TABLE_SIZE - 1);
+        final float fraction = scaled - index;
+        return _table[index] + fraction * (_table[index + 1] - _table[index]);
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.segoh.control;
+
+/**
+ * Maps a value in [0, 1] onto the notes of a scale, counting from the
+ * root note up. The frequencies are computed once, so toFreq is a lookup.
+ */
+public class ScaleFreqConversion implements FreqConversion {
+
+    private final float[] _table;
+
+    /**
+     * @param tuning pitches of the degrees
+     * @param scale degrees of the tuning used as notes, within one period
+     * @param rootFreq frequency of degree 0
+     * @param steps number of notes from 0 to 1
+     */
+    public ScaleFreqConversion(final Tuning tuning, final int[] scale, final double rootFreq, final int steps) {
+        _table = new float[steps];
+        for (int i = 0; i < steps; i++) {
+            final int period = i / scale.length;
+            final int degree = period * tuning.size() + scale[i % scale.length];
+            _table[i] = (float)tuning.freq(degree, rootFreq);
+        }
+    }
+
+    /**
+     * Scale of twelve tone equal temperament from a MIDI root note.
+     */
+    public ScaleFreqConversion(final int[] scale, final int rootNote, final int steps) {
+        this(Tuning.equal(12), scale, Conversion.midiToFreq(rootNote), steps);
+    }
+
+    public float toFreq(final float value) {
+        final int index = (int)(value * _table.length);
+        return _table[Math.max(0, Math.min(index, _table.length - 1))];
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.segoh.control;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pitches of the degrees in one period, usually an octave, in cents.
+ * Degrees outside the period repeat it. Frequencies are computed with
+ * Math.pow, so build lookup tables from them instead of calling per event.
+ */
+public final class Tuning {
+
+    private final double[] _cents;
+    private final double _period;
+
+    /**
+     * @param cents pitch of every degree but the first, which is 0
+     * @param period size of the repeating period in cents
+     */
+    public Tuning(final double[] cents, final double period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        _cents = new double[cents.length + 1];
+        System.arraycopy(cents, 0, _cents, 1, cents.length);
+        _period = period;
+    }
+
+    /**
+     * Equal temperament with the given number of steps per octave.
+     */
+    public static Tuning equal(final int divisions) {
+        final double[] cents = new double[divisions - 1];
+        for (int i = 0; i < cents.length; i++) {
+            cents[i] = 1200.0 * (i + 1) / divisions;
+        }
+        return new Tuning(cents, 1200.0);
+    }
+
+    /**
+     * Read a Scala .scl file. The last pitch listed is the period.
+     * @see <a href="http://www.huygens-fokker.org/scala/scl_format.html">Scala scale file format</a>
+     */
+    public static Tuning fromScala(final Reader reader) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        final List<String> values = new ArrayList<String>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (!line.startsWith("!")) {
+                values.add(line.trim());
+            }
+        }
+        if (values.size() < 2) {
+            throw new IllegalArgumentException("Missing description or note count");
+        }
+        // The first line is the description, the second one the count
+        final int count = Integer.parseInt(firstWord(values.get(1)));
+        if (count < 1 || values.size() < 2 + count) {
+            throw new IllegalArgumentException("Expected " + count + " pitches");
+        }
+        final double[] cents = new double[count - 1];
+        for (int i = 0; i < cents.length; i++) {
+            cents[i] = parsePitch(values.get(2 + i));
+        }
+        return new Tuning(cents, parsePitch(values.get(1 + count)));
+    }
+
+    private static String firstWord(final String value) {
+        final String[] words = value.split("\\s+");
+        return words[0];
+    }
+
+    private static double parsePitch(final String value) {
+        final String pitch = firstWord(value);
+        if (pitch.indexOf('.') >= 0) {
+            return Double.parseDouble(pitch);
+        }
+        final int slash = pitch.indexOf('/');
+        final double ratio = slash < 0
+                ? Double.parseDouble(pitch)
+                : Double.parseDouble(pitch.substring(0, slash)) / Double.parseDouble(pitch.substring(slash + 1));
+        if (ratio <= 0) {
+            throw new IllegalArgumentException("Ratio must be positive: " + pitch);
+        }
+        return 1200.0 * Math.log(ratio) / Math.log(2.0);
+    }
+
+    /**
+     * @return number of degrees per period
+     */
+    public int size() {
+        return _cents.length;
+    }
+
+    /**
+     * Pitch of any degree in cents above degree 0.
+     */
+    public double cents(final int degree) {
+        final int size = _cents.length;
+        final int period = (int)Math.floor((double)degree / size);
+        return period * _period + _cents[degree - period * size];
+    }
+
+    public double freq(final int degree, final double rootFreq) {
+        return rootFreq * Math.pow(2.0, cents(degree) / 1200.0);
+    }
+}
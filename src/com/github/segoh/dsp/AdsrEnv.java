@@ -0,0 +1,250 @@
+package com.github.segoh.dsp;
+
+/**
+ * Attack, decay, sustain, release envelope. Each segment lasts an exact
+ * number of samples and follows a curve computed once when it starts, so
+ * the release ends at exactly zero and isFinished() can be trusted.
+ * Gates may be delayed by a frame offset to start mid block.
+ */
+public class AdsrEnv extends UGen {
+
+    private static final int STAGE_IDLE = 0;
+    private static final int STAGE_ATTACK = 1;
+    private static final int STAGE_DECAY = 2;
+    private static final int STAGE_SUSTAIN = 3;
+    private static final int STAGE_RELEASE = 4;
+
+    private static final int GATE_NONE = 0;
+    private static final int GATE_ON = 1;
+    private static final int GATE_OFF = 2;
+
+    private volatile float _attack = 0.01f;
+    private volatile float _decay = 0.1f;
+    private volatile float _sustain = 1f;
+    private volatile float _release = 0.1f;
+    private volatile float _curve = 0.5f;
+    private volatile float _gain = 1f;
+
+    // Rendering thread only
+    private int _stage = STAGE_IDLE;
+    private int _remaining;
+    private float _level;
+    private float _target;
+    private float _mult;
+    private float _add;
+    private int _pendingGate = GATE_NONE;
+    private int _pendingOffset;
+
+    public AdsrEnv(final AudioContext context) {
+        super(context);
+    }
+
+    /**
+     * Segment times in seconds and the sustain level relative to the peak.
+     */
+    public AdsrEnv set(final float attack, final float decay, final float sustain, final float release) {
+        _attack = attack;
+        _decay = decay;
+        _sustain = sustain;
+        _release = release;
+        return this;
+    }
+
+    /**
+     * Shape of all segments, 0 is a straight line, 1 a steep exponential.
+     */
+    public AdsrEnv setCurve(final float curve) {
+        _curve = curve;
+        return this;
+    }
+
+    /**
+     * Peak level, picked up by the next segment.
+     */
+    public AdsrEnv setGain(final float gain) {
+        _gain = gain;
+        return this;
+    }
+
+    /**
+     * Start the attack from the current level. Only call from the rendering thread.
+     * @param frameOffset frames into the next rendered block
+     */
+    public void noteOn(final int frameOffset) {
+        _pendingGate = GATE_ON;
+        _pendingOffset = frameOffset;
+    }
+
+    /**
+     * Start the release from the current level. Only call from the rendering thread.
+     * @param frameOffset frames into the next rendered block
+     */
+    public void noteOff(final int frameOffset) {
+        _pendingGate = GATE_OFF;
+        _pendingOffset = frameOffset;
+    }
+
+    public void noteOn() {
+        noteOn(0);
+    }
+
+    public void noteOff() {
+        noteOff(0);
+    }
+
+    public float getLevel() {
+        return _level;
+    }
+
+    /**
+     * @return true once the release has reached zero and no gate is pending
+     */
+    public boolean isFinished() {
+        return _stage == STAGE_IDLE && _pendingGate == GATE_NONE;
+    }
+
+    /**
+     * @return true if the gate is on, including a pending note on
+     */
+    public boolean isGateOn() {
+        return _pendingGate == GATE_NONE
+                ? _stage != STAGE_IDLE && _stage != STAGE_RELEASE
+                : _pendingGate == GATE_ON;
+    }
+
+    @Override
+    public boolean render(final float[] buffer, final int offset, final int length) {
+        if (isFinished()) {
+            return false; // Skip rendering the inputs
+        }
+        return super.render(buffer, offset, length);
+    }
+
+    @Override
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        if (isFinished()) {
+            return false; // Silent, whatever the input, also in a compiled plan
+        }
+        final int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int stop = end;
+            if (_pendingGate != GATE_NONE) {
+                stop = Math.min(end, i + _pendingOffset);
+                _pendingOffset -= stop - i;
+            }
+            renderSegments(buffer, i, stop);
+            i = stop;
+            if (_pendingGate != GATE_NONE && _pendingOffset <= 0) {
+                if (_pendingGate == GATE_ON) {
+                    start(STAGE_ATTACK);
+                } else if (_stage != STAGE_IDLE) {
+                    start(STAGE_RELEASE);
+                }
+                _pendingGate = GATE_NONE;
+            }
+        }
+        return hasInput;
+    }
+
+    /**
+     * Enter a stage, starting from the current level.
+     */
+    private void start(final int stage) {
+        _stage = stage;
+        final float seconds;
+        switch (stage) {
+            case STAGE_ATTACK:
+                seconds = _attack;
+                _target = _gain;
+                break;
+            case STAGE_DECAY:
+                seconds = _decay;
+                _target = _sustain * _gain;
+                break;
+            case STAGE_RELEASE:
+                seconds = _release;
+                _target = 0;
+                break;
+            default:
+                return; // Sustain and idle hold their level
+        }
+
+        _remaining = (int)(seconds * context.getSampleRate());
+        if (_remaining <= 0) {
+            finishSegment();
+            return;
+        }
+        final float level = _level;
+        final float target = _target;
+        final float curve = _curve;
+        if (curve <= 0 || level == target) {
+            _mult = 1;
+            _add = (target - level) / _remaining;
+        } else {
+            // Approach a point beyond the target exponentially, the closer
+            // the point the steeper the curve, and stop at the target
+            final double ratio = Math.pow(1000, -curve);
+            final double over = target + (target - level) * ratio;
+            final double mult = Math.pow(ratio / (1 + ratio), 1.0 / _remaining);
+            _mult = (float)mult;
+            _add = (float)(over * (1 - mult));
+        }
+    }
+
+    private void finishSegment() {
+        _level = _target;
+        switch (_stage) {
+            case STAGE_ATTACK:
+                start(STAGE_DECAY);
+                break;
+            case STAGE_DECAY:
+                start(STAGE_SUSTAIN);
+                break;
+            default:
+                _stage = STAGE_IDLE;
+                _level = 0;
+                break;
+        }
+    }
+
+    /**
+     * Multiply the buffer by the envelope, moving on to the next segment
+     * whenever one runs out.
+     */
+    private void renderSegments(final float[] buffer, final int from, final int to) {
+        int i = from;
+        while (i < to) {
+            if (_stage == STAGE_IDLE) {
+                for (; i < to; i++) {
+                    buffer[i] = 0;
+                }
+            } else if (_stage == STAGE_SUSTAIN) {
+                // Ramp over the chunk to follow sustain and gain changes
+                final float target = _sustain * _gain;
+                final float step = (target - _level) / (to - i);
+                float level = _level;
+                for (; i < to; i++) {
+                    level += step;
+                    buffer[i] *= level;
+                }
+                _level = target;
+            } else {
+                final int count = Math.min(_remaining, to - i);
+                final int stop = i + count;
+                final float mult = _mult;
+                final float add = _add;
+                float level = _level;
+                for (; i < stop; i++) {
+                    level = level * mult + add;
+                    buffer[i] *= level;
+                }
+                _level = level;
+                _remaining -= count;
+                if (_remaining == 0) {
+                    finishSegment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.segoh.dsp;
+
+/**
+ * Sample rate, block size and output channels shared by all UGens of a
+ * graph and its DAC.
+ *
+ * Multichannel blocks are planar: channel c of a block starts at
+ * {@code c * getBlockSize()} in the buffer, so a mono UGen only ever sees
+ * the first channel. Samples are interleaved only at the sink.
+ */
+public final class AudioContext {
+
+    public static final int DEFAULT_SAMPLE_RATE = 22050;
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private final int _sampleRate;
+    private final int _blockSize;
+    private final int _channels;
+
+    public AudioContext() {
+        this(DEFAULT_SAMPLE_RATE, DEFAULT_BLOCK_SIZE);
+    }
+
+    public AudioContext(final int sampleRate, final int blockSize) {
+        this(sampleRate, blockSize, 1);
+    }
+
+    public AudioContext(final int sampleRate, final int blockSize, final int channels) {
+        if (sampleRate <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate " + sampleRate + " or block size " + blockSize);
+        }
+        if (channels <= 0) {
+            throw new IllegalArgumentException("Invalid channel count " + channels);
+        }
+        _sampleRate = sampleRate;
+        _blockSize = blockSize;
+        _channels = channels;
+    }
+
+    public int getSampleRate() {
+        return _sampleRate;
+    }
+
+    public int getBlockSize() {
+        return _blockSize;
+    }
+
+    /**
+     * @return the number of output channels
+     */
+    public int getChannels() {
+        return _channels;
+    }
+
+    public double getBlockMillis() {
+        return 1000.0 * _blockSize / _sampleRate;
+    }
+
+    /**
+     * Allocate a buffer for one block. Never call this while rendering.
+     */
+    public float[] newBuffer() {
+        return new float[_blockSize];
+    }
+
+    /**
+     * Allocate a planar buffer for one block of all output channels. Never
+     * call this while rendering.
+     */
+    public float[] newFrameBuffer() {
+        return new float[_blockSize * _channels];
+    }
+
+    @Override
+    public String toString() {
+        return _sampleRate + " Hz, " + _blockSize + " frames" + (_channels == 1 ? "" : ", " + _channels + " channels");
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.segoh.dsp;
+
+/**
+ * Destination for the blocks rendered by a {@link DAC}. Lengths count
+ * frames; a frame holds one sample for each channel of the context,
+ * interleaved.
+ */
+public interface AudioSink {
+
+    /**
+     * Prepare for blocks of the given context. Called on the rendering thread.
+     */
+    void open(final AudioContext context);
+
+    /**
+     * Consume the first {@code length} frames of the given buffer.
+     * @param buffer interleaved samples in the range [-1, 1]
+     * @param length number of valid frames
+     */
+    void write(final float[] buffer, final int length);
+
+    void writeSilence(final int length);
+
+    /**
+     * Stop the output while the DAC is idle. The next write follows resume().
+     */
+    void pause();
+
+    /**
+     * Restart the output after pause(), with as little latency as possible.
+     */
+    void resume();
+
+    void close();
+}
@@ -0,0 +1,231 @@
+package com.github.segoh.dsp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+
+/**
+ * Streams mono or stereo blocks to the Android audio device.
+ * Opening the sink also raises the calling thread to audio priority.
+ *
+ * From Android 6.0 on, blocks are written as floats from a small ring of
+ * preallocated direct buffers with non-blocking writes, so rendering runs
+ * up to a ring length ahead of the device and only waits when the ring is
+ * full. Older devices get blocking 16-bit writes with clipping and TPDF
+ * dither.
+ */
+public class AudioTrackSink implements AudioSink {
+
+    private static final int FLOAT_BYTES = 4;
+
+    private final int _ringSize;
+    private final boolean _isFloat;
+    private AudioTrack _track = null;
+    private int _channels;
+    private short [] _target;
+    private short [] _silenceTarget;
+    private final Pcm.Dither _dither = new Pcm.Dither();
+    private ByteBuffer[] _ring;
+    private FloatBuffer[] _ringFloats;
+    private int _ringHead;
+    private int _ringPending;
+    private long _framesWritten;
+    private RenderStats _stats = null;
+
+    public AudioTrackSink() {
+        this(4);
+    }
+
+    /**
+     * @param ringSize number of blocks that may be rendered ahead of the device
+     */
+    public AudioTrackSink(final int ringSize) {
+        _ringSize = ringSize;
+        _isFloat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * Count underruns into the given stats. Only set this before opening.
+     */
+    public AudioTrackSink setStats(final RenderStats stats) {
+        _stats = stats;
+        return this;
+    }
+
+    /**
+     * The output rate of the device mixer. Rendering at this rate avoids
+     * resampling in the platform.
+     */
+    public static int getNativeSampleRate() {
+        return AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+    }
+
+    public void open(final AudioContext context) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+
+        _channels = context.getChannels();
+        if (_channels > 2) {
+            throw new IllegalArgumentException("Only mono and stereo can be played: " + context);
+        }
+        final int blockSamples = context.getBlockSize() * _channels;
+        final int channelConfig = _channels == 2
+                ? AudioFormat.CHANNEL_CONFIGURATION_STEREO : AudioFormat.CHANNEL_CONFIGURATION_MONO;
+        final int encoding = _isFloat ? AudioFormat.ENCODING_PCM_FLOAT : AudioFormat.ENCODING_PCM_16BIT;
+        if (_isFloat) {
+            _ring = new ByteBuffer[_ringSize];
+            _ringFloats = new FloatBuffer[_ringSize];
+            for (int i = 0; i < _ringSize; i++) {
+                _ring[i] = ByteBuffer.allocateDirect(blockSamples * FLOAT_BYTES).order(ByteOrder.nativeOrder());
+                _ringFloats[i] = _ring[i].asFloatBuffer();
+            }
+            _ringHead = 0;
+            _ringPending = 0;
+        } else {
+            _target = new short[blockSamples];
+            _silenceTarget = new short[blockSamples];
+        }
+
+        final int minSize = AudioTrack.getMinBufferSize(
+                context.getSampleRate(),
+                channelConfig,
+                encoding);
+
+        _track = new AudioTrack(
+                AudioManager.STREAM_MUSIC,
+                context.getSampleRate(),
+                channelConfig,
+                encoding,
+                Math.max(blockSamples * 4 * (_isFloat ? FLOAT_BYTES : 2), minSize),
+                AudioTrack.MODE_STREAM);
+        _framesWritten = 0;
+        _track.play();
+    }
+
+    public void write(final float[] buffer, final int length) {
+        checkUnderrun();
+        final int samples = length * _channels;
+        if (_isFloat) {
+            final FloatBuffer floats = claimSlot(samples);
+            for (int i = 0; i < samples; i++) {
+                final float sample = buffer[i];
+                floats.put(sample > 1f ? 1f : (sample < -1f ? -1f : sample));
+            }
+            pump();
+        } else {
+            final short[] target = _target;
+            final Pcm.Dither dither = _dither;
+            for (int i = 0; i < samples; i++) {
+                target[i] = Pcm.toPcm16(buffer[i], dither.next());
+            }
+            _track.write(target, 0, samples);
+            _framesWritten += length;
+        }
+    }
+
+    public void writeSilence(final int length) {
+        checkUnderrun();
+        final int samples = length * _channels;
+        if (_isFloat) {
+            final FloatBuffer floats = claimSlot(samples);
+            for (int i = 0; i < samples; i++) {
+                floats.put(0f);
+            }
+            pump();
+        } else {
+            _track.write(_silenceTarget, 0, samples);
+            _framesWritten += length;
+        }
+    }
+
+    /**
+     * Take the next free ring slot, waiting for the device if all are pending.
+     */
+    private FloatBuffer claimSlot(final int samples) {
+        // A blocking write may still come back short
+        while (_ringPending == _ringSize) {
+            writeHead(AudioTrack.WRITE_BLOCKING);
+        }
+        final int slot = (_ringHead + _ringPending) % _ringSize;
+        _ringPending++;
+        _ring[slot].clear().limit(samples * FLOAT_BYTES);
+        final FloatBuffer floats = _ringFloats[slot];
+        floats.clear();
+        return floats;
+    }
+
+    /**
+     * Hand pending slots to the device until it does not take any more.
+     */
+    private void pump() {
+        while (_ringPending > 0 && writeHead(AudioTrack.WRITE_NON_BLOCKING)) {
+            // Keep going while whole slots are accepted
+        }
+    }
+
+    /**
+     * Write what is left of the head slot. If the track fails, or a
+     * blocking write makes no progress, the rest of the slot is dropped and
+     * counted as an underrun, since waiting would not get it played.
+     * @return true if the head slot is free again
+     */
+    private boolean writeHead(final int mode) {
+        final ByteBuffer head = _ring[_ringHead];
+        final int written = _track.write(head, head.remaining(), mode);
+        if (written > 0) {
+            // write() advances the position of the buffer itself
+            _framesWritten += written / (FLOAT_BYTES * _channels);
+        }
+        if (written < 0 || (written == 0 && mode == AudioTrack.WRITE_BLOCKING)) {
+            if (_stats != null) {
+                _stats.recordUnderrun();
+            }
+        } else if (head.hasRemaining()) {
+            return false;
+        }
+        _ringHead = (_ringHead + 1) % _ringSize;
+        _ringPending--;
+        return true;
+    }
+
+    /**
+     * The device has run dry if it has played everything written so far.
+     */
+    private void checkUnderrun() {
+        if (_stats != null && _framesWritten > 0) {
+            final long played = _track.getPlaybackHeadPosition() & 0xffffffffL;
+            if (played >= (_framesWritten & 0xffffffffL)) {
+                _stats.recordUnderrun();
+            }
+        }
+    }
+
+    /**
+     * Drop everything queued, it is silence anyway, so the first block
+     * after resume() plays right away.
+     */
+    public void pause() {
+        _track.pause();
+        _track.flush();
+        _ringPending = 0;
+        _framesWritten = 0;
+    }
+
+    public void resume() {
+        _track.play();
+    }
+
+    public void close() {
+        while (_isFloat && _ringPending > 0) {
+            writeHead(AudioTrack.WRITE_BLOCKING);
+        }
+        _track.stop();
+        _track.release();
+        _track = null;
+    }
+}
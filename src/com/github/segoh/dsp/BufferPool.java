@@ -0,0 +1,62 @@
+package com.github.segoh.dsp;
+
+/**
+ * Stack of preallocated block buffers for one rendering thread, each with
+ * room for all output channels. Render plans compiled against a pool and
+ * Mixers take their intermediate buffers from it while they render and hand
+ * them back when done, so the memory follows the deepest nesting of the
+ * graph instead of the number of nodes; e.g. all voices rendered one after
+ * another share the same few buffers. Both reserve what they need when
+ * they are compiled or connected, rendering never allocates.
+ */
+public final class BufferPool {
+
+    private final AudioContext _context;
+    private float[][] _buffers = new float[0][];
+    private int _depth = 0;
+
+    public BufferPool(final AudioContext context) {
+        _context = context;
+    }
+
+    /**
+     * Make sure at least count buffers are allocated. Never call this while
+     * rendering.
+     */
+    public void reserve(final int count) {
+        if (count <= _buffers.length) {
+            return;
+        }
+        final float[][] buffers = new float[count][];
+        System.arraycopy(_buffers, 0, buffers, 0, _buffers.length);
+        for (int i = _buffers.length; i < count; i++) {
+            buffers[i] = _context.newFrameBuffer();
+        }
+        _buffers = buffers;
+    }
+
+    public int getCapacity() {
+        return _buffers.length;
+    }
+
+    /**
+     * Take the next buffer, its contents are undefined.
+     * @throws IllegalStateException if the graph nests deeper than reserved
+     */
+    public float[] acquire() {
+        if (_depth == _buffers.length) {
+            throw new IllegalStateException("All " + _depth + " reserved buffers are in use");
+        }
+        return _buffers[_depth++];
+    }
+
+    /**
+     * Hand back the buffer acquired last.
+     */
+    public void release() {
+        if (_depth == 0) {
+            throw new IllegalStateException("No buffer acquired");
+        }
+        _depth--;
+    }
+}
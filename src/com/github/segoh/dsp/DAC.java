@@ -1,62 +1,318 @@
 package com.github.segoh.dsp;
 
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioTrack;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Renders a graph once per tick and writes it to an {@link AudioSink}.
+ * The graph is either everything chucked into the DAC, or a precompiled
+ * patch published with swap(). Patches replace each other at a block
+ * boundary with a crossfade, the replaced one can be collected with
+ * pollRetired() by a non-audio thread.
+ *
+ * Blocks are rendered planar with all channels of the context and
+ * interleaved for the sink in a single pass.
+ *
+ * The graph chucked into the DAC is not recompiled automatically: after
+ * changing it, call compile() from a non-audio thread. Until then the
+ * DAC renders it recursively, mono and with shared nodes rendered once per
+ * parent. Changes outside that graph leave its plan current.
+ */
 public class DAC extends UGen {
 
     private final float[] _localBuffer;
+    private final float[] _fadeBuffer;
+    private final float[] _interleaved;
+    private final int _channels;
+    private final AtomicReference<RenderPlan> _pending = new AtomicReference<RenderPlan>();
+    private final AtomicReference<RenderPlan> _retired = new AtomicReference<RenderPlan>();
+    private volatile int _pendingFadeFrames;
+    private RenderPlan _patch = null;
+    private RenderPlan _fadingPatch = null;
+    private boolean _isFading = false;
+    private int _fadeFrame;
+    private int _fadeFrames;
     private boolean _isClean = false;
-    private final AudioTrack _track;
-    private final short [] _target = new short[UGen.BUFFER_SIZE];
-    private final short [] _silenceTarget = new short[UGen.BUFFER_SIZE];
+    private final AudioSink _sink;
+    private Scheduler _scheduler = null;
+    private volatile RenderPlan _plan = null;
+    private RenderStats _stats = null;
+    private volatile Recorder _recorder = null;
+    private QualityGovernor _governor = null;
+    private final long _deadlineNanos;
+    private int _silentBlocks = 0;
+    private int _idleBlocks;
 
-    public DAC() {
-        _localBuffer = new float[BUFFER_SIZE];
+    public DAC(final AudioContext context, final AudioSink sink) {
+        super(context);
+        _localBuffer = context.newFrameBuffer();
+        _fadeBuffer = context.newFrameBuffer();
+        _channels = context.getChannels();
+        _interleaved = _channels > 1 ? context.newFrameBuffer() : null;
+        _sink = sink;
+        _deadlineNanos = 1000000000L * context.getBlockSize() / context.getSampleRate();
+        setIdleDelay(0.5f);
+    }
+
+    /**
+     * How long the graph must stay silent before the DAC counts as idle.
+     */
+    public DAC setIdleDelay(final float seconds) {
+        _idleBlocks = Math.max(1, (int)(seconds * context.getSampleRate() / context.getBlockSize()));
+        return this;
+    }
+
+    /**
+     * @return true if the whole graph, tails included, has been silent for
+     *         the idle delay. The caller may then pause() and stop ticking.
+     */
+    public boolean isIdle() {
+        return _silentBlocks >= _idleBlocks;
+    }
+
+    /**
+     * Record timing statistics. Only set this before the DAC is opened and
+     * before compiling.
+     */
+    public DAC setStats(final RenderStats stats) {
+        _stats = stats;
+        return this;
+    }
+
+    /**
+     * Adapt the quality to the measured render load. Only set this before
+     * the DAC is opened.
+     */
+    public DAC setGovernor(final QualityGovernor governor) {
+        _governor = governor;
+        return this;
+    }
+
+    /**
+     * Copy every block played into the recorder, which only keeps them
+     * while it is started. May be set at any time.
+     */
+    public DAC setRecorder(final Recorder recorder) {
+        _recorder = recorder;
+        return this;
+    }
+
+    /**
+     * Split every block at the frames the scheduler asks for. Only set this
+     * before the DAC is opened.
+     */
+    public DAC setScheduler(final Scheduler scheduler) {
+        _scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Compile the graph feeding this DAC into a flat render plan. Call this
+     * from a non-audio thread after every change to the graph, nothing else
+     * does.
+     */
+    public DAC compile() {
+        _plan = RenderPlan.compile(this, _stats);
+        return this;
+    }
 
-        int minSize = AudioTrack.getMinBufferSize(
-                UGen.SAMPLE_RATE,
-                AudioFormat.CHANNEL_CONFIGURATION_MONO,
-                AudioFormat.ENCODING_PCM_16BIT);
+    /**
+     * Replace what the DAC plays with a compiled patch, from the start of the
+     * next block. The plan is rendered as the snapshot it is, so the graph
+     * behind it must not be changed anymore. Only the latest of several
+     * swaps within one block takes effect.
+     * @param fadeBlocks length of the crossfade from the current patch
+     */
+    public DAC swap(final RenderPlan patch, final int fadeBlocks) {
+        _pendingFadeFrames = fadeBlocks * context.getBlockSize();
+        final RenderPlan skipped = _pending.getAndSet(patch);
+        if (skipped != null) {
+            _retired.set(skipped);
+        }
+        return this;
+    }
+
+    /**
+     * @return a patch that has been faded out and is not used by the audio
+     *         thread anymore, or null. Call from a non-audio thread to dispose it.
+     */
+    public RenderPlan pollRetired() {
+        return _retired.getAndSet(null);
+    }
 
-        _track = new AudioTrack(
-                AudioManager.STREAM_MUSIC,
-                UGen.SAMPLE_RATE,
-                AudioFormat.CHANNEL_CONFIGURATION_MONO,
-                AudioFormat.ENCODING_PCM_16BIT,
-                Math.max(UGen.BUFFER_SIZE * 4, minSize),
-                AudioTrack.MODE_STREAM);
+    /**
+     * Pick up a swapped patch at a block boundary, without allocating.
+     */
+    private void beginSwap() {
+        final RenderPlan next = _pending.getAndSet(null);
+        if (next == null) {
+            return;
+        }
+        if (_isFading && _fadingPatch != null) {
+            _retired.set(_fadingPatch); // Cut short by another swap
+        }
+        _fadingPatch = _patch;
+        _patch = next;
+        _fadeFrames = _pendingFadeFrames;
+        _fadeFrame = 0;
+        _isFading = true;
     }
 
     @Override
-    public boolean render(final float[] _buffer) {
-        if (!_isClean) {
-            silenceBuffer(_localBuffer);
+    public boolean render(final float[] _buffer, final int offset, final int length) {
+        boolean isUpdated = renderPatch(_patch, _localBuffer, offset, length);
+        if (!_isFading) {
+            return isUpdated;
         }
-        _isClean = !renderInputs(_localBuffer);
-        return !_isClean;
+
+        final float[] fadeBuffer = _fadeBuffer;
+        final int stride = context.getBlockSize();
+        final int end = offset + length;
+        for (int c = 0; c < _channels; c++) {
+            for (int i = c * stride + offset; i < c * stride + end; i++) {
+                fadeBuffer[i] = 0;
+            }
+        }
+        if (renderPatch(_fadingPatch, fadeBuffer, offset, length)) {
+            isUpdated = true;
+        }
+        // Linear crossfade, the new patch is in the local buffer
+        final float[] buffer = _localBuffer;
+        final float step = 1f / Math.max(1, _fadeFrames);
+        for (int c = 0; c < _channels; c++) {
+            float gain = _fadeFrame * step;
+            final int base = c * stride;
+            for (int i = base + offset; i < base + end; i++) {
+                gain = Math.min(1f, gain + step);
+                buffer[i] = gain * buffer[i] + (1f - gain) * fadeBuffer[i];
+            }
+        }
+        _fadeFrame += length;
+        if (_fadeFrame >= _fadeFrames) {
+            if (_fadingPatch != null) {
+                _retired.set(_fadingPatch);
+            }
+            _fadingPatch = null;
+            _isFading = false;
+        }
+        return isUpdated;
+    }
+
+    /**
+     * @param patch null for the graph chucked into the DAC itself
+     */
+    private boolean renderPatch(final RenderPlan patch, final float[] buffer, final int offset, final int length) {
+        if (patch != null) {
+            return patch.renderChannels(buffer, offset, length, _channels);
+        }
+        final RenderPlan plan = _plan;
+        if (plan != null && !plan.isStale()) {
+            return plan.renderChannels(buffer, offset, length, _channels);
+        }
+        // Recursive rendering is mono, play it on every channel
+        final boolean isUpdated = renderInputs(buffer, offset, length);
+        if (isUpdated) {
+            final int stride = context.getBlockSize();
+            for (int c = 1; c < _channels; c++) {
+                System.arraycopy(buffer, offset, buffer, c * stride + offset, length);
+            }
+        }
+        return isUpdated;
+    }
+
+    /**
+     * Convert the planar block into frames for the sink, in one pass.
+     */
+    private float[] interleave() {
+        final float[] planar = _localBuffer;
+        final float[] frames = _interleaved;
+        final int channels = _channels;
+        final int blockSize = context.getBlockSize();
+        if (channels == 2) {
+            for (int i = 0; i < blockSize; i++) {
+                frames[2 * i] = planar[i];
+                frames[2 * i + 1] = planar[blockSize + i];
+            }
+        } else {
+            for (int i = 0; i < blockSize; i++) {
+                for (int c = 0; c < channels; c++) {
+                    frames[channels * i + c] = planar[c * blockSize + i];
+                }
+            }
+        }
+        return frames;
     }
 
     public void tick() {
-        render(_localBuffer);
+        final RenderStats stats = _stats;
+        final QualityGovernor governor = _governor;
+        final boolean isTimed = stats != null || governor != null;
+        final long start = isTimed ? System.nanoTime() : 0;
+        final int blockSize = context.getBlockSize();
+        if (!_isClean) {
+            silenceBuffer(_localBuffer);
+        }
 
+        boolean isUpdated = false;
+        if (_scheduler == null) {
+            beginSwap();
+            isUpdated = render(_localBuffer, 0, blockSize);
+        } else {
+            // The scheduler may swap patches too, pick them up right away
+            _scheduler.beginBlock();
+            beginSwap();
+            int frame = 0;
+            while (frame < blockSize) {
+                final int next = Math.min(blockSize, Math.max(frame + 1, _scheduler.dispatch(frame)));
+                isUpdated |= render(_localBuffer, frame, next - frame);
+                frame = next;
+            }
+        }
+        _isClean = !isUpdated;
+        _silentBlocks = _isClean ? _silentBlocks + 1 : 0;
+
+        final long rendered = isTimed ? System.nanoTime() : 0;
+        final float[] frames = _isClean || _channels == 1 ? _localBuffer : interleave();
         if (_isClean) {
-            _track.write(_silenceTarget, 0, _silenceTarget.length);
+            _sink.writeSilence(blockSize);
         } else {
-            for (int i = 0; i < BUFFER_SIZE; i++) {
-                _target[i] = (short)(32768.0f * _localBuffer[i]);
+            _sink.write(frames, blockSize);
+        }
+        final Recorder recorder = _recorder;
+        if (recorder != null) {
+            if (_isClean) {
+                recorder.recordSilence(blockSize);
+            } else {
+                recorder.record(frames, blockSize);
+            }
+        }
+
+        if (governor != null) {
+            governor.recordBlock(rendered - start, _deadlineNanos);
+        }
+        if (stats != null) {
+            stats.recordWrite(System.nanoTime() - rendered);
+            stats.recordBlock(rendered - start, _deadlineNanos);
+            final RenderPlan plan = _patch != null ? _patch : _plan;
+            if (plan != null && (plan == _patch || !plan.isStale())) {
+                plan.recordNodeTimes();
             }
-            _track.write(_target, 0, _target.length);
         }
     }
 
     public void open() {
-        _track.play();
+        _sink.open(context);
+    }
+
+    public void pause() {
+        _sink.pause();
+    }
+
+    public void resume() {
+        _silentBlocks = 0;
+        _sink.resume();
     }
 
     public void close() {
-        _track.stop();
-        _track.release();
+        _sink.close();
     }
 }
@@ -1,36 +1,217 @@
 package com.github.segoh.dsp;
 
+/**
+ * Feedback delay. The delay time may change while playing, it glides to
+ * the new value instead of jumping. In a stereo context it can ping-pong,
+ * bouncing the echoes between the left and right channel.
+ */
 public class Delay extends UGen {
 
-    private final float[] _delayLine;
-    private int _delayPointer;
-    private float _wet;
-    private float _dry;
+    public static final int INTERPOLATE_LINEAR = 0;
+    public static final int INTERPOLATE_ALLPASS = 1;
 
-    public Delay(final int length, final float wetAmount) {
-        super();
-        _delayLine = new float[length];
-        setWet(wetAmount);
+    /**
+     * Time constant of the delay time glide, in seconds.
+     */
+    private static final float GLIDE_TIME = 0.05f;
+
+    private final DelayLine _line;
+    /** Second line for ping-pong, only in a multichannel context. */
+    private final DelayLine _right;
+    private final float _glide;
+    private float _currentDelay;
+    private float _lastEcho;
+    private float _lastRightEcho;
+    private boolean _wasPingPong = false;
+    private int _silentFrames;
+    private volatile float _delay;
+    private volatile float _wet;
+    private volatile float _dry;
+    private volatile float _feedback;
+    private volatile int _interpolation = INTERPOLATE_LINEAR;
+    private volatile boolean _isEnabled = true;
+    private volatile boolean _isPingPong = false;
+
+    /**
+     * Sounds like the original delay, which fed its output back inverted:
+     * the echoes alternate in sign, the first one at -wetAmount * (1 - wetAmount)
+     * and each following one wetAmount times the previous. Use setWet() and
+     * setFeedback() afterwards for a plain feedback delay.
+     * @param length the delay in samples, also the longest one possible
+     */
+    public Delay(final AudioContext context, final int length, final float wetAmount) {
+        super(context);
+        _line = new DelayLine(length);
+        _right = context.getChannels() > 1 ? new DelayLine(length) : null;
+        _glide = 1f - (float)Math.exp(-1.0 / (GLIDE_TIME * context.getSampleRate()));
+        _silentFrames = _line.getMaxDelay();
+        setDelay(length);
+        _currentDelay = _delay;
+        // y[n] = dry * x[n] - wet * y[n - length], with the line holding y / dry
+        _dry = 1f - wetAmount;
+        _wet = -wetAmount * _dry;
+        setFeedback(-wetAmount);
+    }
+
+    /**
+     * @param delay in samples, between 2 and the length given at construction
+     */
+    public void setDelay(final float delay) {
+        _delay = Math.max(2, Math.min(delay, _line.getMaxDelay()));
     }
 
-    public synchronized void setWet(final float wetAmount) {
+    public void setWet(final float wetAmount) {
         _wet = wetAmount;
-        _dry = 1f - _wet;
+        _dry = 1f - wetAmount;
+    }
+
+    public void setFeedback(final float feedback) {
+        _feedback = feedback;
+    }
+
+    public void setInterpolation(final int interpolation) {
+        _interpolation = interpolation;
+    }
+
+    /**
+     * Feed the input into the left line and cross the feedback over, so the
+     * echoes alternate between the channels. Ignored in a mono context.
+     */
+    public void setPingPong(final boolean isPingPong) {
+        _isPingPong = isPingPong;
+    }
+
+    /**
+     * A disabled delay passes its input through and forgets its echoes.
+     */
+    public void setEnabled(final boolean isEnabled) {
+        _isEnabled = isEnabled;
     }
 
     @Override
-    public boolean render(final float[] buffer) {
-        renderInputs(buffer);
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final DelayLine line = _line;
+        final int lineLength = line.getMaxDelay();
+        final float targetDelay = _delay;
+        if (!_isEnabled) {
+            if (_silentFrames < lineLength) {
+                clearLines();
+            }
+            _currentDelay = targetDelay;
+            return hasInput;
+        }
+        if (!hasInput && _silentFrames >= lineLength) {
+            _currentDelay = targetDelay;
+            return false; // The line only holds zeros
+        }
 
-        final float[] localLine = _delayLine;
-        final int lineLength = _delayLine.length;
+        final float wet = _wet;
+        final float dry = _dry;
+        final float feedback = _feedback;
+        final boolean isAllpass = _interpolation == INTERPOLATE_ALLPASS;
+        final float glide = _glide;
+        float delay = _currentDelay;
+        float echo = _lastEcho;
+        float peak = 0;
 
-        for (int i = 0; i < UGen.BUFFER_SIZE; i++) {
-            buffer[i] = (_dry * buffer[i]) - (_wet * localLine[_delayPointer]);
-            localLine[_delayPointer] = buffer[i];
-            _delayPointer = (_delayPointer + 1) % lineLength;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            delay += glide * (targetDelay - delay);
+            echo = isAllpass ? line.readAllpass(delay, echo) : line.readLinear(delay);
+            final float in = buffer[i];
+            final float feed = in + feedback * echo;
+            line.write(feed);
+            buffer[i] = dry * in + wet * echo;
+            peak = Math.max(peak, Math.abs(feed));
         }
+        _currentDelay = delay;
+        _lastEcho = echo;
 
+        // Once nothing above SILENCE went in for a whole line, the line is silent
+        if (hasInput || peak > SILENCE) {
+            _silentFrames = 0;
+        } else {
+            _silentFrames += length;
+            if (_silentFrames >= lineLength) {
+                clearLines();
+            }
+        }
         return true;
     }
+
+    @Override
+    protected int processChannels(final float[] buffer, final int offset, final int length, final int channels) {
+        final boolean isPingPong = _isPingPong && _right != null;
+        if (isPingPong != _wasPingPong) {
+            _wasPingPong = isPingPong;
+            clearLines(); // Neither mode knows what to make of the other's echoes
+        }
+        if (!isPingPong) {
+            return super.processChannels(buffer, offset, length, channels);
+        }
+
+        final DelayLine left = _line;
+        final DelayLine right = _right;
+        final int lineLength = left.getMaxDelay();
+        final float targetDelay = _delay;
+        if (!_isEnabled || (channels == 0 && _silentFrames >= lineLength)) {
+            if (_silentFrames < lineLength) {
+                clearLines();
+            }
+            _currentDelay = targetDelay;
+            return channels;
+        }
+
+        final float wet = _wet;
+        final float dry = _dry;
+        final float feedback = _feedback;
+        final boolean isAllpass = _interpolation == INTERPOLATE_ALLPASS;
+        final float glide = _glide;
+        final int stride = context.getBlockSize();
+        final int rightInput = channels > 1 ? stride : 0;
+        float delay = _currentDelay;
+        float leftEcho = _lastEcho;
+        float rightEcho = _lastRightEcho;
+        float peak = 0;
+
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            delay += glide * (targetDelay - delay);
+            leftEcho = isAllpass ? left.readAllpass(delay, leftEcho) : left.readLinear(delay);
+            rightEcho = isAllpass ? right.readAllpass(delay, rightEcho) : right.readLinear(delay);
+            // Silent channels hold garbage, not zeros
+            final float inLeft = channels > 0 ? buffer[i] : 0;
+            final float inRight = channels > 0 ? buffer[rightInput + i] : 0;
+            final float feedLeft = 0.5f * (inLeft + inRight) + feedback * rightEcho;
+            final float feedRight = feedback * leftEcho;
+            left.write(feedLeft);
+            right.write(feedRight);
+            buffer[i] = dry * inLeft + wet * leftEcho;
+            buffer[stride + i] = dry * inRight + wet * rightEcho;
+            peak = Math.max(peak, Math.max(Math.abs(feedLeft), Math.abs(feedRight)));
+        }
+        _currentDelay = delay;
+        _lastEcho = leftEcho;
+        _lastRightEcho = rightEcho;
+
+        if (channels > 0 || peak > SILENCE) {
+            _silentFrames = 0;
+        } else {
+            _silentFrames += length;
+            if (_silentFrames >= lineLength) {
+                clearLines();
+            }
+        }
+        return 2;
+    }
+
+    private void clearLines() {
+        _line.clear();
+        _lastEcho = 0;
+        if (_right != null) {
+            _right.clear();
+            _lastRightEcho = 0;
+        }
+        _silentFrames = _line.getMaxDelay();
+    }
 }
@@ -0,0 +1,80 @@
+package com.github.segoh.dsp;
+
+/**
+ * Ring buffer for delay effects. The size is a power of two so that indices
+ * wrap with a mask, and taps may read at fractional delays. Not thread safe,
+ * use it from the rendering thread only.
+ */
+public final class DelayLine {
+
+    private final float[] _buffer;
+    private final int _mask;
+    private int _writeIndex = 0;
+
+    /**
+     * @param maxDelay the longest delay in samples that will be read
+     */
+    public DelayLine(final int maxDelay) {
+        int size = 4;
+        while (size < maxDelay + 2) {
+            size <<= 1;
+        }
+        _buffer = new float[size];
+        _mask = size - 1;
+    }
+
+    public int getMaxDelay() {
+        return _buffer.length - 2;
+    }
+
+    /**
+     * Append a sample. Taps read relative to the last written sample,
+     * which sits at a delay of 1.
+     */
+    public void write(final float sample) {
+        _buffer[_writeIndex] = sample;
+        _writeIndex = (_writeIndex + 1) & _mask;
+    }
+
+    public float read(final int delay) {
+        return _buffer[(_writeIndex - delay) & _mask];
+    }
+
+    /**
+     * Read between two samples, good for modulated delays.
+     * @param delay at least 1
+     */
+    public float readLinear(final float delay) {
+        final int whole = (int)delay;
+        final float frac = delay - whole;
+        final int index = _writeIndex - whole;
+        final float a = _buffer[index & _mask];
+        final float b = _buffer[(index - 1) & _mask];
+        return a + frac * (b - a);
+    }
+
+    /**
+     * Read through a first order allpass, which keeps the high end intact
+     * but rings on fast delay changes. Good for static or slowly moving taps.
+     * @param delay at least 2
+     * @param previous the value this tap returned for the previous sample
+     */
+    public float readAllpass(final float delay, final float previous) {
+        int whole = (int)delay;
+        float frac = delay - whole;
+        // Keep the coefficient away from 1 where the allpass barely decays
+        if (frac < 0.5f) {
+            whole--;
+            frac++;
+        }
+        final float eta = (1f - frac) / (1f + frac);
+        return eta * (read(whole) - previous) + read(whole + 1);
+    }
+
+    public void clear() {
+        final float[] buffer = _buffer;
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = 0;
+        }
+    }
+}
@@ -1,41 +1,71 @@
 package com.github.segoh.dsp;
 
+/**
+ * One-pole envelope. Factors are given per sample at the default sample rate
+ * and scaled to the rate of the context, so envelope times do not change
+ * with the sample rate.
+ */
 public class ExpEnv extends UGen {
 
+    private static final Kernels KERNELS = Kernels.get();
+
     public static final float FACTOR_HARD = 0.005f;
     public static final float FACTOR_SOFT = 0.00005f;
 
-    private boolean _state;
+    private volatile boolean _state;
     private float _attenuation;
-    private float _factor = FACTOR_SOFT;
+    private volatile float _factor;
     private final float _idealMarker = 0.25f;
-    private float _marker = _idealMarker;
+    private volatile float _marker = _idealMarker;
+
+    public ExpEnv(final AudioContext context) {
+        super(context);
+        setFactor(FACTOR_SOFT);
+    }
 
-    public synchronized void setActive(final boolean nextState) {
+    public void setActive(final boolean nextState) {
         _state = nextState;
     }
 
-    public synchronized void setFactor(final float nextFactor) {
-        _factor = nextFactor;
+    public void setFactor(final float nextFactor) {
+        final double ratio = (double)AudioContext.DEFAULT_SAMPLE_RATE / context.getSampleRate();
+        _factor = (float)(1.0 - Math.pow(1.0 - nextFactor, ratio));
     }
 
-    public synchronized void setGain(final float gain) {
+    public void setGain(final float gain) {
         _marker = gain * _idealMarker;
     }
 
+    public float getLevel() {
+        return _attenuation;
+    }
+
+    public boolean isClosed() {
+        return !_state && _attenuation < 0.0001f;
+    }
+
     @Override
-    public synchronized boolean render(final float[] buffer) {
-        if (!_state && _attenuation < 0.0001f) {
+    public boolean render(final float[] buffer, final int offset, final int length) {
+        if (isClosed()) {
+            return false; // Skip rendering the inputs
+        }
+        return super.render(buffer, offset, length);
+    }
+
+    @Override
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final boolean state = _state;
+        float attenuation = _attenuation;
+
+        if (!state && attenuation < 0.0001f) {
             return false; // Envelope is closed
         }
-        if (!renderInputs(buffer)) {
+        if (!hasInput) {
             return false; // No input
         }
 
-        for (int i = 0; i < UGen.BUFFER_SIZE; i++) {
-            buffer[i] *= _attenuation;
-            _attenuation += ((_state ? _marker : 0) - _attenuation) * _factor;
-        }
+        final float target = state ? _marker : 0;
+        _attenuation = KERNELS.scaleExp(buffer, offset, length, attenuation, target, _factor);
         return true;
     }
 }
@@ -0,0 +1,56 @@
+package com.github.segoh.dsp;
+
+/**
+ * Scales the sum of its inputs. A new gain is ramped to over one block
+ * instead of stepping, so changes do not click.
+ */
+public class Gain extends UGen {
+
+    private static final Kernels KERNELS = Kernels.get();
+
+    private volatile float _gain;
+    private float _currentGain;
+
+    public Gain(final AudioContext context) {
+        this(context, 1f);
+    }
+
+    public Gain(final AudioContext context, final float gain) {
+        super(context);
+        _gain = gain;
+        _currentGain = gain;
+    }
+
+    public void setGain(final float gain) {
+        _gain = gain;
+    }
+
+    public float getGain() {
+        return _gain;
+    }
+
+    @Override
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        return processChannels(buffer, offset, length, hasInput ? 1 : 0) > 0;
+    }
+
+    @Override
+    protected int processChannels(final float[] buffer, final int offset, final int length, final int channels) {
+        final float target = _gain;
+        final float start = _currentGain;
+        _currentGain = target;
+        if (channels == 0 || (start == 0 && target == 0)) {
+            return 0;
+        }
+        if (start == target && start == 1f) {
+            return channels;
+        }
+
+        final float step = (target - start) / length;
+        final int stride = context.getBlockSize();
+        for (int c = 0; c < channels; c++) {
+            KERNELS.scale(buffer, c * stride + offset, length, start, step);
+        }
+        return channels;
+    }
+}
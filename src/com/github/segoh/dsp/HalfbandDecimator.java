@@ -0,0 +1,46 @@
+package com.github.segoh.dsp;
+
+/**
+ * Halves the sample rate with an 11 tap halfband FIR in polyphase form.
+ * Every other tap but the center one is zero, so the even phase is a plain
+ * delay and each output costs four multiplies.
+ */
+final class HalfbandDecimator {
+
+    private static final float H1 = 150f / 512f;
+    private static final float H3 = -25f / 512f;
+    private static final float H5 = 3f / 512f;
+
+    private float _odd1, _odd2, _odd3, _odd4, _odd5;
+    private float _even1, _even2;
+
+    /**
+     * @param even the earlier of two consecutive input samples
+     * @param odd the later one
+     * @return one output sample, 2.5 output samples behind the input
+     */
+    float process(final float even, final float odd) {
+        final float out = H5 * (odd + _odd5) + H3 * (_odd1 + _odd4) + H1 * (_odd2 + _odd3)
+                + 0.5f * _even2;
+        _odd5 = _odd4;
+        _odd4 = _odd3;
+        _odd3 = _odd2;
+        _odd2 = _odd1;
+        _odd1 = odd;
+        _even2 = _even1;
+        _even1 = even;
+        return out;
+    }
+
+    void reset() {
+        reset(0);
+    }
+
+    /**
+     * Forget the history, as if the input had been constant at value. The
+     * taps sum to 1, so the output continues at value.
+     */
+    void reset(final float value) {
+        _odd1 = _odd2 = _odd3 = _odd4 = _odd5 = _even1 = _even2 = value;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.segoh.dsp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated histogram of durations in power-of-two nanosecond buckets.
+ * Bucket n counts values in [2^n, 2^(n+1)) ns, bucket 0 also counts 0 ns.
+ * Recording is wait-free but only safe from a single thread; any thread
+ * may take snapshots.
+ */
+public final class Histogram {
+
+    public static final int BUCKETS = 40;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+    public void record(final long nanos) {
+        final int bucket = nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+        _counts.lazySet(bucket, _counts.get(bucket) + 1);
+    }
+
+    public long[] snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _counts.get(i);
+        }
+        return counts;
+    }
+
+    public static long count(final long[] counts) {
+        long total = 0;
+        for (final long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound in ns of the bucket holding the given quantile, 0 if empty.
+     * @param quantile in [0, 1]
+     */
+    public static long quantile(final long[] counts, final double quantile) {
+        final long total = count(counts);
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long)Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << counts.length;
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.segoh.dsp;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The block loops that dominate rendering, kept in one place so that a JVM
+ * with the incubating Vector API can run them as SIMD code. get() returns
+ * the VectorKernels of the desktop build when they are on the class path
+ * and their module is resolved ({@code --add-modules jdk.incubator.vector}),
+ * the plain loops otherwise, e.g. on Android. The two may differ in the
+ * last bits of a result. {@code -Dspaceage.kernels=scalar} forces the plain
+ * loops, for comparisons.
+ */
+public abstract class Kernels {
+
+    /** Minimum length of the scratch array of readLinear(). */
+    public static final int SCRATCH_INTS = 64;
+
+    private static final Kernels SCALAR = new ScalarKernels();
+    private static final Kernels VECTOR = load("com.github.segoh.dsp.VectorKernels");
+    private static final Kernels DEFAULT =
+            VECTOR != null && !"scalar".equals(System.getProperty("spaceage.kernels")) ? VECTOR : SCALAR;
+
+    protected Kernels() {
+    }
+
+    public static Kernels get() {
+        return DEFAULT;
+    }
+
+    public static Kernels scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @return the SIMD kernels, or null if this runtime cannot run them
+     */
+    public static Kernels vector() {
+        return VECTOR;
+    }
+
+    private static Kernels load(final String className) {
+        // ReflectiveOperationException only exists from Android API 19 on
+        try {
+            return Class.forName(className).asSubclass(Kernels.class).getDeclaredConstructor().newInstance();
+        } catch (final LinkageError e) {
+            return null; // The vector module is not resolved
+        } catch (final ClassNotFoundException e) {
+            return null;
+        } catch (final NoSuchMethodException e) {
+            return null;
+        } catch (final InstantiationException e) {
+            return null;
+        } catch (final IllegalAccessException e) {
+            return null;
+        } catch (final InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Add source times gain to target.
+     */
+    public abstract void mix(float[] source, int sourceOffset, float[] target, int targetOffset, int length,
+            float gain);
+
+    /**
+     * Multiply by a gain that moves by step before every sample.
+     */
+    public abstract void scale(float[] buffer, int offset, int length, float gain, float step);
+
+    /**
+     * Multiply by a one-pole envelope that starts at level and moves
+     * towards target by factor after every sample.
+     * @return the level after the block
+     */
+    public abstract float scaleExp(float[] buffer, int offset, int length, float level, float target,
+            float factor);
+
+    /**
+     * Add a linearly interpolated lookup of a power of two sized table at a
+     * steady rate.
+     * @param indices scratch of at least {@link #SCRATCH_INTS}, owned by the caller
+     * @return the phase after the block
+     */
+    public abstract float readLinear(float[] table, float[] buffer, int offset, int length, float phase,
+            float cyclesPerSample, int[] indices);
+
+    /**
+     * Convert to signed 16-bit, clipping at full scale, like {@link Pcm#toPcm16(float)}.
+     */
+    public abstract void toPcm16(float[] source, short[] target, int length);
+}
@@ -0,0 +1,91 @@
+package com.github.segoh.dsp;
+
+/**
+ * Sums its channels, each with its own gain, and scales the sum by the
+ * gain of the mixer itself. Buses are mixers too: for a send, add the same
+ * source to the mixer of an effect bus, and add the effect as the return
+ * to the main mixer.
+ *
+ * Rendered recursively, each input is rendered into its own buffer from the
+ * pool, so a channel only ever scales its own signal. Compiled into a
+ * {@link RenderPlan}, inputs have their own buffers anyway and the pool is
+ * not used. addInput() reserves the buffers for the input as it is then,
+ * including Mixers nested in it, so build inputs before adding them.
+ */
+public class Mixer extends Gain {
+
+    private static final Kernels KERNELS = Kernels.get();
+    /** The mix and the channel being rendered. */
+    private static final int OWN_BUFFERS = 2;
+
+    private final BufferPool _pool;
+
+    public Mixer(final AudioContext context, final BufferPool pool) {
+        super(context);
+        _pool = pool;
+        pool.reserve(OWN_BUFFERS);
+    }
+
+    /**
+     * Feed input into a new channel.
+     * @return the gain of the channel
+     */
+    public Gain addInput(final UGen input) {
+        return addInput(input, 1f);
+    }
+
+    public Gain addInput(final UGen input, final float gain) {
+        final Gain channel = new Gain(context, gain);
+        input.chuck(channel);
+        channel.chuck(this);
+        _pool.reserve(OWN_BUFFERS + poolDepth(input));
+        return channel;
+    }
+
+    /**
+     * @return the pool buffers the Mixers in the graph of ugen hold at most at once
+     */
+    private static int poolDepth(final UGen ugen) {
+        int depth = 0;
+        for (final UGen input : ugen.getInputs()) {
+            depth = Math.max(depth, poolDepth(input));
+        }
+        return ugen instanceof Mixer ? OWN_BUFFERS + depth : depth;
+    }
+
+    @Override
+    public boolean render(final float[] buffer, final int offset, final int length) {
+        final int end = offset + length;
+        final float[] mix = _pool.acquire();
+        clear(mix, offset, end);
+        final boolean isUpdated = process(mix, offset, length, renderInputs(mix, offset, length));
+        if (isUpdated) {
+            KERNELS.mix(mix, offset, buffer, offset, length, 1f);
+        }
+        _pool.release();
+        return isUpdated;
+    }
+
+    @Override
+    protected boolean renderInputs(final float[] buffer, final int offset, final int length) {
+        final UGen[] inputs = getInputs();
+        final int end = offset + length;
+        final float[] channel = _pool.acquire();
+        boolean isBufferUpdated = false;
+        for (int n = 0; n < inputs.length; n++) {
+            clear(channel, offset, end);
+            if (inputs[n].render(channel, offset, length)) {
+                KERNELS.mix(channel, offset, buffer, offset, length, 1f);
+                isBufferUpdated = true;
+            }
+        }
+        _pool.release();
+        return isBufferUpdated;
+    }
+
+    private static void clear(final float[] buffer, final int offset, final int end) {
+        for (int i = offset; i < end; i++) {
+            buffer[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.segoh.dsp;
+
+/**
+ * Short delay swept by a sine LFO, the core of chorus and flanger effects.
+ * Up to MAX_TAPS taps read the line at evenly spread LFO phases and are
+ * averaged, the first one also feeds back into the line.
+ */
+public class ModulatedDelay extends UGen {
+
+    public static final int MAX_TAPS = 4;
+
+    private static final float GLIDE_TIME = 0.05f;
+
+    private final DelayLine _line;
+    private final float _glide;
+    private final float[] _tapCos = new float[MAX_TAPS];
+    private final float[] _tapSin = new float[MAX_TAPS];
+    private int _currentTaps = 0;
+    private float _currentDelay;
+    private float _currentDepth;
+    private float _lfoCos = 1;
+    private float _lfoSin = 0;
+    private int _silentFrames;
+    private volatile float _delay;
+    private volatile float _depth;
+    private volatile float _rate;
+    private volatile float _feedback;
+    private volatile float _wet;
+    private volatile int _taps;
+
+    /**
+     * @param maxSeconds the longest delay plus depth that will be set
+     */
+    public ModulatedDelay(final AudioContext context, final float maxSeconds) {
+        super(context);
+        _line = new DelayLine((int)Math.ceil(maxSeconds * context.getSampleRate()) + 1);
+        _glide = 1f - (float)Math.exp(-1.0 / (GLIDE_TIME * context.getSampleRate()));
+        _silentFrames = _line.getMaxDelay();
+        setDelay(0.01f);
+        setDepth(0.002f);
+        setRate(0.5f);
+        setFeedback(0);
+        setWet(0.5f);
+        setTaps(1);
+        _currentDelay = _delay;
+        _currentDepth = _depth;
+    }
+
+    /**
+     * Three taps around 20 ms, no feedback.
+     */
+    public static ModulatedDelay chorus(final AudioContext context) {
+        final ModulatedDelay chorus = new ModulatedDelay(context, 0.05f);
+        chorus.setDelay(0.02f);
+        chorus.setDepth(0.004f);
+        chorus.setRate(0.8f);
+        chorus.setTaps(3);
+        return chorus;
+    }
+
+    /**
+     * One tap sweeping a few milliseconds with strong feedback.
+     */
+    public static ModulatedDelay flanger(final AudioContext context) {
+        final ModulatedDelay flanger = new ModulatedDelay(context, 0.02f);
+        flanger.setDelay(0.003f);
+        flanger.setDepth(0.0025f);
+        flanger.setRate(0.2f);
+        flanger.setFeedback(0.7f);
+        return flanger;
+    }
+
+    /**
+     * Center of the sweep in seconds.
+     */
+    public void setDelay(final float seconds) {
+        _delay = seconds * context.getSampleRate();
+    }
+
+    /**
+     * Sweep distance either side of the center, in seconds.
+     */
+    public void setDepth(final float seconds) {
+        _depth = seconds * context.getSampleRate();
+    }
+
+    /**
+     * LFO frequency in Hz.
+     */
+    public void setRate(final float rate) {
+        _rate = rate;
+    }
+
+    public void setFeedback(final float feedback) {
+        _feedback = feedback;
+    }
+
+    public void setWet(final float wetAmount) {
+        _wet = wetAmount;
+    }
+
+    public void setTaps(final int taps) {
+        _taps = Math.max(1, Math.min(taps, MAX_TAPS));
+    }
+
+    private void updateTaps(final int taps) {
+        _currentTaps = taps;
+        for (int t = 0; t < taps; t++) {
+            final double phase = 2 * Math.PI * t / taps;
+            _tapCos[t] = (float)Math.cos(phase);
+            _tapSin[t] = (float)Math.sin(phase);
+        }
+    }
+
+    @Override
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final DelayLine line = _line;
+        final int lineLength = line.getMaxDelay();
+        if (!hasInput && _silentFrames >= lineLength) {
+            return false;
+        }
+
+        final int taps = _taps;
+        if (taps != _currentTaps) {
+            updateTaps(taps);
+        }
+        final float[] tapCos = _tapCos;
+        final float[] tapSin = _tapSin;
+        final float tapGain = 1f / taps;
+        final float targetDelay = _delay;
+        final float targetDepth = _depth;
+        final float wet = _wet;
+        final float dry = 1f - wet;
+        final float feedback = _feedback;
+        final float glide = _glide;
+        final double omega = 2 * Math.PI * _rate / context.getSampleRate();
+        final float rotCos = (float)Math.cos(omega);
+        final float rotSin = (float)Math.sin(omega);
+        final float maxDelay = lineLength;
+        float delay = _currentDelay;
+        float depth = _currentDepth;
+        float lfoCos = _lfoCos;
+        float lfoSin = _lfoSin;
+        float peak = 0;
+
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            delay += glide * (targetDelay - delay);
+            depth += glide * (targetDepth - depth);
+
+            float first = 0;
+            float sum = 0;
+            for (int t = 0; t < taps; t++) {
+                // sin(lfo + phase of tap t)
+                final float lfo = lfoSin * tapCos[t] + lfoCos * tapSin[t];
+                final float tapDelay = Math.max(1, Math.min(delay + depth * lfo, maxDelay));
+                final float echo = line.readLinear(tapDelay);
+                if (t == 0) {
+                    first = echo;
+                }
+                sum += echo;
+            }
+
+            final float in = buffer[i];
+            final float feed = in + feedback * first;
+            line.write(feed);
+            buffer[i] = dry * in + wet * tapGain * sum;
+            peak = Math.max(peak, Math.abs(feed));
+
+            final float nextCos = lfoCos * rotCos - lfoSin * rotSin;
+            lfoSin = lfoSin * rotCos + lfoCos * rotSin;
+            lfoCos = nextCos;
+        }
+
+        // Pull the rotating phasor back onto the unit circle
+        final float norm = 1.5f - 0.5f * (lfoCos * lfoCos + lfoSin * lfoSin);
+        _lfoCos = lfoCos * norm;
+        _lfoSin = lfoSin * norm;
+        _currentDelay = delay;
+        _currentDepth = depth;
+
+        if (hasInput || peak > SILENCE) {
+            _silentFrames = 0;
+        } else {
+            _silentFrames += length;
+            if (_silentFrames >= lineLength) {
+                line.clear();
+            }
+        }
+        return true;
+    }
+}
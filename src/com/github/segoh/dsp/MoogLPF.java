@@ -3,69 +3,178 @@ package com.github.segoh.dsp;
 /**
  * Digital approximation of Moog VCF.
  * based on http://www.musicdsp.org/showArchiveComment.php?ArchiveID=24
+ *
+ * The filter runs a block at a time with its state in locals. Coefficient
+ * changes are ramped over one block, and the cubic saturation may run 2x or
+ * 4x oversampled to keep its harmonics from aliasing.
  */
 public class MoogLPF extends UGen {
 
-    private float _cutoff;
-    private float _res;
+    /**
+     * Tiny offset added to the input, keeps the decaying feedback from
+     * turning into slow subnormal floats.
+     */
+    private static final float DENORMAL_BIAS = 1e-18f;
+
+    private volatile float _cutoff;
+    private volatile float _res;
+    private volatile int _oversampling = 1;
+    private float _currentCutoff;
+    private float _currentRes;
+    private int _currentOversampling;
     private float _y1, _y2, _y3, _y4;
     private float _oldx;
     private float _oldy1, _oldy2, _oldy3;
-    private float _x;
-    private float _r;
-    private float _p;
-    private float _k;
+    private float _lastInput;
+    private float _r, _p, _k;
+    private float _targetR, _targetP, _targetK;
+    private final HalfbandDecimator _decimator = new HalfbandDecimator();
+    private final HalfbandDecimator _decimator4x = new HalfbandDecimator();
+    private final float[] _oversampled = new float[4];
+    private boolean _isSilent = true;
 
-    public MoogLPF(final float cutoff, final float resonance) {
+    public MoogLPF(final AudioContext context, final float cutoff, final float resonance) {
+        super(context);
         _cutoff = cutoff;
         _res = resonance;
-        _y1 = _y2 = _y3 = _y4 = _oldx = _oldy1 = _oldy2 = _oldy3 = 0;
-        updateState();
+        updateTargets(cutoff, resonance, 1);
+        _r = _targetR;
+        _p = _targetP;
+        _k = _targetK;
     }
 
-    public synchronized void setCutoff(final float _ctoff) {
+    public void setCutoff(final float _ctoff) {
         _cutoff = _ctoff;
-        updateState();
     }
 
-    public synchronized void setResonance(final float resonance) {
+    public void setResonance(final float resonance) {
         _res = resonance;
-        updateState();
     }
 
-    private synchronized void updateState() {
-        final float f = (_cutoff + _cutoff) / UGen.SAMPLE_RATE;  // [0 - 1]
-        _p = f * (1.8f - 0.8f * f);
-        _k = _p + _p - 1.f;
+    /**
+     * Run the filter at 1, 2 or 4 times the sample rate. Takes effect at the
+     * next block.
+     */
+    public void setOversampling(final int factor) {
+        if (factor != 1 && factor != 2 && factor != 4) {
+            throw new IllegalArgumentException("Oversampling must be 1, 2 or 4: " + factor);
+        }
+        _oversampling = factor;
+    }
 
-        final float t = (1.f - _p) * 1.386249f;
-        final float t2 = 12.f + t * t;
-        _r = _res * (t2 + 6.f * t) / (t2 - 6.f * t);
+    public int getOversampling() {
+        return _oversampling;
     }
 
-    private float processSample(final float input) {
-        _x = input - _r*_y4;
+    /**
+     * Recalculate the target coefficients, only ever called from the rendering thread.
+     */
+    private void updateTargets(final float cutoff, final float res, final int oversampling) {
+        _currentCutoff = cutoff;
+        _currentRes = res;
+        _currentOversampling = oversampling;
 
-        _y1 =  _x*_p +  _oldx*_p - _k*_y1;
-        _y2 = _y1*_p + _oldy1*_p - _k*_y2;
-        _y3 = _y2*_p + _oldy2*_p - _k*_y3;
-        _y4 = _y3*_p + _oldy3*_p - _k*_y4;
+        final float f = (cutoff + cutoff) / (context.getSampleRate() * oversampling);  // [0 - 1]
+        _targetP = f * (1.8f - 0.8f * f);
+        _targetK = _targetP + _targetP - 1.f;
 
-        _y4 -= (_y4 * _y4 * _y4) / 6.f;
+        final float t = (1.f - _targetP) * 1.386249f;
+        final float t2 = 12.f + t * t;
+        _targetR = res * (t2 + 6.f * t) / (t2 - 6.f * t);
+    }
 
-        _oldx = _x;
-        _oldy1 = _y1;
-        _oldy2 = _y2;
-        _oldy3 = _y3;
-        return _y4;
+    private boolean isDecayed() {
+        return Math.abs(_y1) < SILENCE && Math.abs(_y2) < SILENCE
+                && Math.abs(_y3) < SILENCE && Math.abs(_y4) < SILENCE;
+    }
+
+    private void reset() {
+        _y1 = _y2 = _y3 = _y4 = _oldx = _oldy1 = _oldy2 = _oldy3 = _lastInput = 0;
+        _decimator.reset();
+        _decimator4x.reset();
     }
 
     @Override
-    public boolean render(final float[] buffer) {
-        renderInputs(buffer);
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final float cutoff = _cutoff;
+        final float res = _res;
+        final int oversampling = _oversampling;
+        if (oversampling != _currentOversampling) {
+            // History from another rate would click, continue from the last output instead
+            _decimator.reset(_y4);
+            _decimator4x.reset(_y4);
+        }
+        if (cutoff != _currentCutoff || res != _currentRes || oversampling != _currentOversampling) {
+            updateTargets(cutoff, res, oversampling);
+        }
+
+        if (!hasInput && _isSilent) {
+            _r = _targetR;
+            _p = _targetP;
+            _k = _targetK;
+            return false;
+        }
+
+        float y1 = _y1, y2 = _y2, y3 = _y3, y4 = _y4;
+        float oldx = _oldx, oldy1 = _oldy1, oldy2 = _oldy2, oldy3 = _oldy3;
+        float lastInput = _lastInput;
+        float r = _r, p = _p, k = _k;
+        final float dr = (_targetR - r) / length;
+        final float dp = (_targetP - p) / length;
+        final float dk = (_targetK - k) / length;
+        final float[] oversampled = _oversampled;
+        final float step = 1f / oversampling;
+
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            r += dr;
+            p += dp;
+            k += dk;
+            final float input = buffer[i];
+            final float delta = (input - lastInput) * step;
+            lastInput = input;
+
+            // Linear interpolation up, halfband decimation back down
+            for (int j = 0; j < oversampling; j++) {
+                final float x = input - delta * (oversampling - 1 - j) - r * y4 + DENORMAL_BIAS;
+
+                y1 =  x * p +  oldx * p - k * y1;
+                y2 = y1 * p + oldy1 * p - k * y2;
+                y3 = y2 * p + oldy2 * p - k * y3;
+                y4 = y3 * p + oldy3 * p - k * y4;
+
+                y4 -= (y4 * y4 * y4) / 6.f;
+
+                oldx = x;
+                oldy1 = y1;
+                oldy2 = y2;
+                oldy3 = y3;
+                oversampled[j] = y4;
+            }
+
+            if (oversampling == 1) {
+                buffer[i] = y4;
+            } else if (oversampling == 2) {
+                buffer[i] = _decimator.process(oversampled[0], oversampled[1]);
+            } else {
+                buffer[i] = _decimator.process(
+                        _decimator4x.process(oversampled[0], oversampled[1]),
+                        _decimator4x.process(oversampled[2], oversampled[3]));
+            }
+        }
+
+        _y1 = y1; _y2 = y2; _y3 = y3; _y4 = y4;
+        _oldx = oldx; _oldy1 = oldy1; _oldy2 = oldy2; _oldy3 = oldy3;
+        _lastInput = lastInput;
+        _r = _targetR;
+        _p = _targetP;
+        _k = _targetK;
 
-        for (int i = 0; i < UGen.BUFFER_SIZE; i++) {
-            buffer[i] = processSample(buffer[i]);
+        if (!hasInput && isDecayed()) {
+            reset();
+            _isSilent = true;
+        } else {
+            _isSilent = false;
         }
         return true;
     }
@@ -0,0 +1,69 @@
+package com.github.segoh.dsp;
+
+/**
+ * Discards all blocks, for machines without audio hardware.
+ * In real-time mode it waits for each block's due time like a device would,
+ * so the engine runs at the same pace as it does when playing.
+ */
+public class NullSink implements AudioSink {
+
+    private final boolean _isRealtime;
+    private int _sampleRate;
+    private long _start;
+    private long _framesWritten;
+
+    public NullSink() {
+        this(false);
+    }
+
+    public NullSink(final boolean isRealtime) {
+        _isRealtime = isRealtime;
+    }
+
+    public void open(final AudioContext context) {
+        _sampleRate = context.getSampleRate();
+        _start = System.nanoTime();
+        _framesWritten = 0;
+    }
+
+    public void write(final float[] buffer, final int length) {
+        advance(length);
+    }
+
+    public void writeSilence(final int length) {
+        advance(length);
+    }
+
+    public long getFramesWritten() {
+        return _framesWritten;
+    }
+
+    private void advance(final int length) {
+        _framesWritten += length;
+        if (!_isRealtime) {
+            return;
+        }
+        final long due = _start + _framesWritten * 1000000000L / _sampleRate;
+        long wait = due - System.nanoTime();
+        while (wait > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            wait = due - System.nanoTime();
+        }
+    }
+
+    public void pause() {
+    }
+
+    public void resume() {
+        // Pace from now on, as if the paused time had never passed
+        _start = System.nanoTime() - _framesWritten * 1000000000L / _sampleRate;
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.segoh.dsp;
+
+/**
+ * Pulls blocks through a UGen graph as fast as the CPU allows,
+ * independent of any audio device clock. The sink is opened by the first
+ * render and stays open, so consecutive renders continue the same output
+ * until close().
+ */
+public class OfflineRenderer {
+
+    private final DAC _dac;
+    private long _framesRendered;
+    private long _elapsedNanos;
+    private boolean _isOpen = false;
+    private boolean _isClosed = false;
+
+    public OfflineRenderer(final DAC dac) {
+        _dac = dac;
+    }
+
+    public OfflineRenderer(final UGen source, final AudioSink sink) {
+        this(new DAC(source.getContext(), sink));
+        source.chuck(_dac);
+    }
+
+    /**
+     * Render at least the given number of frames, rounded up to whole blocks.
+     * @throws IllegalStateException if the renderer has been closed
+     */
+    public OfflineRenderer render(final int frames) {
+        if (_isClosed) {
+            throw new IllegalStateException("Renderer is closed");
+        }
+        final int blockSize = _dac.getContext().getBlockSize();
+        final int blocks = (frames + blockSize - 1) / blockSize;
+
+        if (!_isOpen) {
+            _dac.open();
+            _isOpen = true;
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            _dac.tick();
+        }
+        _elapsedNanos += System.nanoTime() - start;
+
+        _framesRendered += (long)blocks * blockSize;
+        return this;
+    }
+
+    public OfflineRenderer renderSeconds(final float seconds) {
+        return render((int)Math.ceil(seconds * _dac.getContext().getSampleRate()));
+    }
+
+    /**
+     * Close the sink, e.g. to finish a WAV file. Nothing can be rendered after this.
+     */
+    public void close() {
+        if (_isOpen) {
+            _dac.close();
+            _isOpen = false;
+        }
+        _isClosed = true;
+    }
+
+    public long getFramesRendered() {
+        return _framesRendered;
+    }
+
+    public long getElapsedNanos() {
+        return _elapsedNanos;
+    }
+
+    /**
+     * Throughput of all renders so far, including the time spent in the sink.
+     */
+    public double getSamplesPerSecond() {
+        return _elapsedNanos == 0 ? 0 : _framesRendered * 1e9 / _elapsedNanos;
+    }
+
+    /**
+     * How many times faster than real-time the graph was rendered.
+     */
+    public double getRealtimeFactor() {
+        return getSamplesPerSecond() / _dac.getContext().getSampleRate();
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.segoh.dsp;
+
+/**
+ * Places a mono signal in the stereo field with an equal power law, or
+ * balances a stereo one. A new position is ramped to over one block.
+ * With more than two channels only the first two are balanced, the others
+ * pass through unchanged. In a mono context, or rendered recursively, it
+ * passes its input through.
+ */
+public class Pan extends UGen {
+
+    private static final double QUARTER_PI = Math.PI / 4;
+
+    private volatile float _pan;
+    private float _currentPan;
+
+    public Pan(final AudioContext context) {
+        this(context, 0);
+    }
+
+    /**
+     * @param pan from -1, left, to 1, right
+     */
+    public Pan(final AudioContext context, final float pan) {
+        super(context);
+        setPan(pan);
+        _currentPan = _pan;
+    }
+
+    public void setPan(final float pan) {
+        _pan = Math.max(-1f, Math.min(pan, 1f));
+    }
+
+    public float getPan() {
+        return _pan;
+    }
+
+    @Override
+    protected int processChannels(final float[] buffer, final int offset, final int length, final int channels) {
+        final float target = _pan;
+        final float start = _currentPan;
+        _currentPan = target;
+        if (channels == 0 || context.getChannels() < 2) {
+            return super.processChannels(buffer, offset, length, channels);
+        }
+
+        final int stride = context.getBlockSize();
+        final int end = offset + length;
+        if (channels == 1) {
+            // Write the right channel from the left one, then scale the left in place
+            float leftGain = (float)Math.cos((start + 1) * QUARTER_PI);
+            float rightGain = (float)Math.sin((start + 1) * QUARTER_PI);
+            final float leftStep = ((float)Math.cos((target + 1) * QUARTER_PI) - leftGain) / length;
+            final float rightStep = ((float)Math.sin((target + 1) * QUARTER_PI) - rightGain) / length;
+            for (int i = offset; i < end; i++) {
+                leftGain += leftStep;
+                rightGain += rightStep;
+                final float in = buffer[i];
+                buffer[stride + i] = in * rightGain;
+                buffer[i] = in * leftGain;
+            }
+            return 2;
+        }
+
+        float leftGain = Math.min(1f, 1f - start);
+        float rightGain = Math.min(1f, 1f + start);
+        final float leftStep = (Math.min(1f, 1f - target) - leftGain) / length;
+        final float rightStep = (Math.min(1f, 1f + target) - rightGain) / length;
+        for (int i = offset; i < end; i++) {
+            leftGain += leftStep;
+            rightGain += rightStep;
+            buffer[i] *= leftGain;
+            buffer[stride + i] *= rightGain;
+        }
+        return channels;
+    }
+}
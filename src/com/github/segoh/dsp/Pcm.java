@@ -0,0 +1,60 @@
+package com.github.segoh.dsp;
+
+/**
+ * Sample format conversions shared by the sinks.
+ */
+public final class Pcm {
+
+    private Pcm() {
+    }
+
+    /**
+     * Convert to signed 16-bit, clipping at full scale instead of wrapping.
+     */
+    public static short toPcm16(final float sample) {
+        if (sample >= 1.0f) {
+            return Short.MAX_VALUE;
+        }
+        if (sample <= -1.0f) {
+            return -Short.MAX_VALUE;
+        }
+        return (short)(32767.0f * sample);
+    }
+
+    /**
+     * Convert to signed 16-bit with dither, clipping at full scale.
+     * @param dither noise in units of the least significant bit
+     */
+    public static short toPcm16(final float sample, final float dither) {
+        final float scaled = 32767.0f * sample + dither;
+        if (scaled >= 32767.0f) {
+            return Short.MAX_VALUE;
+        }
+        if (scaled <= -32767.0f) {
+            return -Short.MAX_VALUE;
+        }
+        return (short)Math.round(scaled);
+    }
+
+    /**
+     * Triangular (TPDF) dither of +-1 LSB from an allocation-free xorshift
+     * generator. Not thread-safe, use one per sink.
+     */
+    public static final class Dither {
+
+        private int _state = 0x9E3779B9;
+
+        public float next() {
+            return uniform() + uniform();
+        }
+
+        private float uniform() {
+            int x = _state;
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            _state = x;
+            return x * (0.5f / Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.segoh.dsp;
+
+/**
+ * Picks a quality tier from the measured render load, the render time of a
+ * block relative to its deadline. A high load steps down right away, even
+ * right after a step up. After any change the tier is held for a while
+ * before it may step up again, and a step up needs a long quiet period,
+ * which doubles every time a step up overloaded within its hold.
+ * Tiers are applied by a listener on the rendering thread.
+ */
+public class QualityGovernor {
+
+    public interface Listener {
+
+        /**
+         * Called on the rendering thread between blocks, must not allocate.
+         */
+        void onTierChanged(int tier);
+    }
+
+    private static final float SMOOTHING = 0.05f;
+    /** Blocks between two steps down, about one time constant of the smoothing. */
+    private static final int SETTLE_BLOCKS = 20;
+    private static final float HIGH_LOAD = 0.7f;
+    private static final float LOW_LOAD = 0.3f;
+    private static final float HOLD_SECONDS = 1f;
+    private static final float UP_SECONDS = 5f;
+    private static final float MAX_UP_SECONDS = 120f;
+
+    private final int _minTier;
+    private final int _maxTier;
+    private final Listener _listener;
+    private volatile int _tier;
+    private volatile float _load = 0;
+    private int _holdBlocks;
+    private int _upBlocks;
+    private int _maxUpBlocks;
+    private int _hold = 0;
+    private int _settle = 0;
+    private int _quietBlocks = 0;
+    private boolean _isProbing = false;
+
+    public QualityGovernor(final AudioContext context, final int minTier, final int maxTier,
+            final int initialTier, final Listener listener) {
+        _minTier = minTier;
+        _maxTier = maxTier;
+        _tier = initialTier;
+        _listener = listener;
+        final float blocksPerSecond = (float)context.getSampleRate() / context.getBlockSize();
+        _holdBlocks = (int)(HOLD_SECONDS * blocksPerSecond);
+        _upBlocks = (int)(UP_SECONDS * blocksPerSecond);
+        _maxUpBlocks = (int)(MAX_UP_SECONDS * blocksPerSecond);
+    }
+
+    public int getTier() {
+        return _tier;
+    }
+
+    /**
+     * @return smoothed render time per deadline, 1 means no headroom left
+     */
+    public float getLoad() {
+        return _load;
+    }
+
+    /**
+     * Feed the render time of one block. Called by the DAC.
+     */
+    void recordBlock(final long renderNanos, final long deadlineNanos) {
+        final float load = _load + SMOOTHING * ((float)renderNanos / deadlineNanos - _load);
+        _load = load;
+        if (_hold > 0) {
+            _hold--;
+        }
+        if (_settle > 0) {
+            _settle--;
+        }
+
+        if (load > HIGH_LOAD) {
+            // The smoothed load lags, give it time to follow a step down first
+            if (_tier > _minTier && _settle == 0) {
+                if (_isProbing) {
+                    // The last step up did not fit, wait longer before the next
+                    _upBlocks = Math.min(_upBlocks * 2, _maxUpBlocks);
+                    _isProbing = false;
+                }
+                _settle = SETTLE_BLOCKS;
+                setTier(_tier - 1);
+            }
+            _quietBlocks = 0;
+            return;
+        }
+        if (_hold > 0) {
+            return;
+        }
+
+        _isProbing = false; // The last step up held without overload
+        if (load < LOW_LOAD && _tier < _maxTier) {
+            if (++_quietBlocks >= _upBlocks) {
+                _isProbing = true;
+                setTier(_tier + 1);
+            }
+        } else {
+            _quietBlocks = 0;
+        }
+    }
+
+    private void setTier(final int tier) {
+        _tier = tier;
+        _hold = _holdBlocks;
+        _quietBlocks = 0;
+        _listener.onTierChanged(tier);
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.segoh.dsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records what a {@link DAC} plays to a 16-bit WAV file. The audio
+ * thread only copies blocks into a preallocated ring, a writer thread
+ * converts and writes them in large chunks. When the writer falls behind,
+ * whole blocks are dropped and counted instead of blocking the audio thread.
+ * Time the audio thread spends asleep on silence is not recorded.
+ */
+public class Recorder {
+
+    private static final float DEFAULT_RING_SECONDS = 2f;
+    private static final int CHUNK_FRAMES = 32768;
+
+    private final File _file;
+    private final int _sampleRate;
+    private final int _channels;
+    private final float[] _ring;
+    private final int _mask;
+    private final long _pollNanos;
+    private volatile int _head = 0;  // next sample to write out, written by the writer
+    private volatile int _tail = 0;  // next sample to fill, written by the audio thread
+    private volatile boolean _isRecording = false;
+    private volatile long _framesRecorded = 0;
+    private volatile long _framesDropped = 0;
+    private volatile IOException _error = null;
+    private Thread _writer = null;
+
+    public Recorder(final AudioContext context, final File file) {
+        this(context, file, DEFAULT_RING_SECONDS);
+    }
+
+    /**
+     * @param ringSeconds how far the writer may fall behind before blocks are dropped
+     */
+    public Recorder(final AudioContext context, final File file, final float ringSeconds) {
+        _file = file;
+        _sampleRate = context.getSampleRate();
+        _channels = context.getChannels();
+        // A power of two for masked indexing, holding at least one block
+        final int blockSamples = context.getBlockSize() * _channels;
+        int capacity = 1;
+        while (capacity < blockSamples || capacity < ringSeconds * _sampleRate * _channels) {
+            capacity <<= 1;
+        }
+        _ring = new float[capacity];
+        _mask = capacity - 1;
+        // Wake up about four times per ring
+        _pollNanos = 250000000L * capacity / ((long)_sampleRate * _channels);
+    }
+
+    /**
+     * Create the file and start the writer thread.
+     */
+    public synchronized void start() {
+        if (_writer != null) {
+            return;
+        }
+        final RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(_file, "rw");
+            raf.setLength(0);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot open " + _file, e);
+        }
+        _head = _tail;
+        _framesRecorded = 0;
+        _framesDropped = 0;
+        _error = null;
+        _isRecording = true;
+        _writer = new Thread(new Runnable() {
+            public void run() {
+                drain(raf);
+            }
+        }, "Recorder");
+        _writer.start();
+    }
+
+    /**
+     * Stop recording, wait until everything is written and finish the file.
+     * @throws IllegalStateException if writing failed at some point
+     */
+    public synchronized void stop() {
+        if (_writer == null) {
+            return;
+        }
+        _isRecording = false;
+        LockSupport.unpark(_writer);
+        boolean isInterrupted = false;
+        while (_writer.isAlive()) {
+            try {
+                _writer.join();
+            } catch (final InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        _writer = null;
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (_error != null) {
+            throw new IllegalStateException("Cannot write " + _file, _error);
+        }
+    }
+
+    public boolean isRecording() {
+        return _isRecording;
+    }
+
+    public long getFramesRecorded() {
+        return _framesRecorded;
+    }
+
+    /**
+     * @return frames lost because the writer fell behind
+     */
+    public long getFramesDropped() {
+        return _framesDropped;
+    }
+
+    /**
+     * Audio thread side, copies a block of interleaved frames into the ring.
+     */
+    void record(final float[] buffer, final int length) {
+        final int samples = length * _channels;
+        if (!reserve(samples)) {
+            return;
+        }
+        final float[] ring = _ring;
+        final int mask = _mask;
+        final int tail = _tail;
+        for (int i = 0; i < samples; i++) {
+            ring[(tail + i) & mask] = buffer[i];
+        }
+        publish(samples);
+    }
+
+    void recordSilence(final int length) {
+        final int samples = length * _channels;
+        if (!reserve(samples)) {
+            return;
+        }
+        final float[] ring = _ring;
+        final int mask = _mask;
+        final int tail = _tail;
+        for (int i = 0; i < samples; i++) {
+            ring[(tail + i) & mask] = 0;
+        }
+        publish(samples);
+    }
+
+    /**
+     * @return false to drop the block
+     */
+    private boolean reserve(final int samples) {
+        if (!_isRecording) {
+            return false;
+        }
+        if (_tail - _head + samples > _ring.length) {
+            _framesDropped += samples / _channels;
+            return false;
+        }
+        return true;
+    }
+
+    private void publish(final int samples) {
+        _tail = _tail + samples;
+        _framesRecorded += samples / _channels;
+    }
+
+    /**
+     * Writer thread side.
+     */
+    private void drain(final RandomAccessFile raf) {
+        final FileChannel channel = raf.getChannel();
+        final int chunkSamples = CHUNK_FRAMES * _channels;
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(chunkSamples * Wav.BYTES_PER_SAMPLE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final Pcm.Dither dither = new Pcm.Dither();
+        final float[] ring = _ring;
+        final int mask = _mask;
+        long dataSize = 0;
+        try {
+            bytes.clear();
+            Wav.putHeader(bytes, _sampleRate, _channels, 0);
+            bytes.flip();
+            writeFully(channel, bytes);
+
+            while (true) {
+                final boolean isLast = !_isRecording;
+                final int head = _head;
+                final int available = _tail - head;
+                if (available == 0) {
+                    if (isLast) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, _pollNanos);
+                    continue;
+                }
+                final int samples = Math.min(available, chunkSamples);
+                bytes.clear();
+                for (int i = 0; i < samples; i++) {
+                    bytes.putShort(Pcm.toPcm16(ring[(head + i) & mask], dither.next()));
+                }
+                _head = head + samples;
+                bytes.flip();
+                dataSize += bytes.remaining();
+                writeFully(channel, bytes);
+            }
+
+            bytes.clear();
+            Wav.putHeader(bytes, _sampleRate, _channels, (int)Math.min(dataSize, Integer.MAX_VALUE - 36));
+            bytes.flip();
+            channel.position(0);
+            writeFully(channel, bytes);
+        } catch (final IOException e) {
+            _error = e;
+            _isRecording = false;
+        } finally {
+            try {
+                raf.close();
+            } catch (final IOException e) {
+                if (_error == null) {
+                    _error = e;
+                }
+            }
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
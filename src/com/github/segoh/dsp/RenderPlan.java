@@ -0,0 +1,365 @@
+package com.github.segoh.dsp;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Flat, precompiled schedule for the graph feeding a root UGen.
+ * Nodes are rendered exactly once per block in topological order, each into
+ * its own buffer, so a UGen chucked into several parents is no longer
+ * rendered twice. A node with a single input that nobody else reads
+ * processes in its input's buffer. Other buffers are reused once their
+ * last reader is done. Rendering walks plain arrays and never allocates.
+ * Plans compiled against a {@link BufferPool} own no buffers, they borrow
+ * them from the pool while rendering.
+ *
+ * Every node reports how many channels it produced, so mono stays mono
+ * through the graph, even into a stereo node: a mono subgraph costs one
+ * channel of work and no copies until it meets a wider signal.
+ *
+ * A plan is a snapshot: chuck/unchuck into one of its nodes, or into the
+ * root it was compiled for, make it stale but never break it. Changes
+ * elsewhere, e.g. building the next patch, leave it current. Plans are not
+ * recompiled automatically, compile a new one off the audio thread.
+ */
+public final class RenderPlan {
+
+    private static final Kernels KERNELS = Kernels.get();
+
+    private final UGen _root;
+    private final int _rootVersion;
+    private final UGen[] _nodes;
+    private final int[] _versions;
+    private final int[][] _inputs;
+    private final int[] _outputs;
+    private final boolean[] _isInPlace;
+    private final float[][] _buffers;
+    private final BufferPool _pool;
+    private final int[] _slots;
+    private final float[][] _slotBuffers;
+    private final int[] _outChannels;
+    private final int _stride;
+    private final Histogram[] _nodeTimes;
+    private final long[] _nodeNanos;
+
+    private RenderPlan(final UGen root, final int rootVersion, final UGen[] nodes, final int[] versions,
+            final int[][] inputs, final int[] outputs, final boolean[] isInPlace, final int[] slots,
+            final int slotCount, final BufferPool pool, final Histogram[] nodeTimes, final AudioContext context) {
+        _root = root;
+        _rootVersion = rootVersion;
+        _nodes = nodes;
+        _versions = versions;
+        _inputs = inputs;
+        _outputs = outputs;
+        _isInPlace = isInPlace;
+        _slots = slots;
+        _pool = pool;
+        _slotBuffers = new float[slotCount][];
+        _buffers = new float[nodes.length][];
+        if (pool == null) {
+            for (int s = 0; s < slotCount; s++) {
+                _slotBuffers[s] = context.newFrameBuffer();
+            }
+            assignBuffers();
+        } else {
+            pool.reserve(slotCount);
+        }
+        _outChannels = new int[nodes.length];
+        _stride = context.getBlockSize();
+        _nodeTimes = nodeTimes;
+        _nodeNanos = nodeTimes == null ? null : new long[nodes.length];
+    }
+
+    /**
+     * Compile the graph of everything chucked into root, excluding root itself.
+     * @throws IllegalStateException if the graph has a cycle
+     */
+    public static RenderPlan compile(final UGen root) {
+        return compile(root, null);
+    }
+
+    /**
+     * @param stats if it is profiling nodes, the plan times every node
+     */
+    public static RenderPlan compile(final UGen root, final RenderStats stats) {
+        return compile(root, null, root.getContext(), stats, null);
+    }
+
+    /**
+     * @param pool borrow buffers from this pool while rendering, only use
+     *        the plan on the thread owning the pool
+     */
+    public static RenderPlan compile(final UGen root, final RenderStats stats, final BufferPool pool) {
+        return compile(root, null, root.getContext(), stats, pool);
+    }
+
+    /**
+     * Compile the graph ending in output, including output itself, e.g. a
+     * patch to hand to {@link DAC#swap(RenderPlan, int)}.
+     */
+    public static RenderPlan compileOutput(final UGen output, final RenderStats stats) {
+        return compile(null, new UGen[] { output }, output.getContext(), stats, null);
+    }
+
+    /**
+     * @param root compile its inputs, or null to compile the given outputs
+     */
+    private static RenderPlan compile(final UGen root, final UGen[] outputNodes, final AudioContext context,
+            final RenderStats stats, final BufferPool pool) {
+        final int rootVersion = root != null ? root.getInputsVersion() : 0;
+        final UGen[] rootInputs = root != null ? root.getInputs() : outputNodes;
+        final ArrayList<UGen> order = new ArrayList<UGen>();
+        final ArrayList<Integer> orderVersions = new ArrayList<Integer>();
+        final ArrayList<UGen[]> orderInputs = new ArrayList<UGen[]>();
+        final IdentityHashMap<UGen, Integer> indices = new IdentityHashMap<UGen, Integer>();
+        final IdentityHashMap<UGen, Boolean> visiting = new IdentityHashMap<UGen, Boolean>();
+        for (final UGen input : rootInputs) {
+            visit(input, order, orderVersions, orderInputs, indices, visiting);
+        }
+
+        final int count = order.size();
+        final UGen[] nodes = order.toArray(new UGen[count]);
+        final int[] versions = new int[count];
+        for (int n = 0; n < count; n++) {
+            versions[n] = orderVersions.get(n);
+        }
+        final int[][] inputs = new int[count][];
+        final int[] readers = new int[count];
+        for (int n = 0; n < count; n++) {
+            final UGen[] ugenInputs = orderInputs.get(n);
+            inputs[n] = new int[ugenInputs.length];
+            for (int i = 0; i < ugenInputs.length; i++) {
+                inputs[n][i] = indices.get(ugenInputs[i]);
+                readers[inputs[n][i]]++;
+            }
+        }
+        final int[] outputs = new int[rootInputs.length];
+        for (int i = 0; i < rootInputs.length; i++) {
+            outputs[i] = indices.get(rootInputs[i]);
+            readers[outputs[i]]++;
+        }
+
+        // Assign buffer slots, releasing each one after its last reader
+        final ArrayList<Integer> free = new ArrayList<Integer>();
+        int slotCount = 0;
+        final int[] slots = new int[count];
+        final boolean[] isInPlace = new boolean[count];
+        for (int n = 0; n < count; n++) {
+            if (inputs[n].length == 1 && readers[inputs[n][0]] == 1) {
+                slots[n] = slots[inputs[n][0]];
+                isInPlace[n] = true;
+                continue;
+            }
+            slots[n] = free.isEmpty() ? slotCount++ : free.remove(free.size() - 1);
+            for (final int input : inputs[n]) {
+                if (--readers[input] == 0) {
+                    free.add(slots[input]);
+                }
+            }
+        }
+
+        final Histogram[] nodeTimes = stats != null && stats.isProfilingNodes() ? stats.registerNodes(nodes) : null;
+        return new RenderPlan(root, rootVersion, nodes, versions, inputs, outputs, isInPlace, slots, slotCount, pool,
+                nodeTimes, context);
+    }
+
+    private void assignBuffers() {
+        for (int n = 0; n < _nodes.length; n++) {
+            _buffers[n] = _slotBuffers[_slots[n]];
+        }
+    }
+
+    /**
+     * Append ugen after its inputs, with the version and inputs it had when visited.
+     */
+    private static void visit(final UGen ugen, final ArrayList<UGen> order, final ArrayList<Integer> versions,
+            final ArrayList<UGen[]> inputs, final IdentityHashMap<UGen, Integer> indices,
+            final IdentityHashMap<UGen, Boolean> visiting) {
+        if (indices.containsKey(ugen)) {
+            return;
+        }
+        if (visiting.put(ugen, Boolean.TRUE) != null) {
+            throw new IllegalStateException("UGen graph has a cycle at " + ugen);
+        }
+        // A change after this read makes the plan stale
+        final int version = ugen.getInputsVersion();
+        final UGen[] ugenInputs = ugen.getInputs();
+        for (final UGen input : ugenInputs) {
+            visit(input, order, versions, inputs, indices, visiting);
+        }
+        visiting.remove(ugen);
+        indices.put(ugen, order.size());
+        order.add(ugen);
+        versions.add(version);
+        inputs.add(ugenInputs);
+    }
+
+    /**
+     * @return true if the inputs of the root or of any node changed since
+     *         compiling. Walks the nodes, but does not allocate.
+     */
+    public boolean isStale() {
+        if (_root != null && _root.getInputsVersion() != _rootVersion) {
+            return true;
+        }
+        final UGen[] nodes = _nodes;
+        for (int n = 0; n < nodes.length; n++) {
+            if (nodes[n].getInputsVersion() != _versions[n]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getNodeCount() {
+        return _nodes.length;
+    }
+
+    /**
+     * @return the number of block buffers the plan renders into
+     */
+    public int getBufferCount() {
+        return _slotBuffers.length;
+    }
+
+    /**
+     * Render all nodes and add the outputs feeding the root into the first
+     * channel of buffer, downmixing multichannel outputs.
+     * @return true if the buffer was updated.
+     */
+    public boolean render(final float[] buffer, final int offset, final int length) {
+        return renderChannels(buffer, offset, length, 1);
+    }
+
+    /**
+     * Render all nodes and add the outputs feeding the root into a planar
+     * buffer with the given number of channels. Mono outputs go to every
+     * channel, outputs with more channels than the buffer are folded down,
+     * see {@link #fold}.
+     * @return true if the buffer was updated.
+     */
+    public boolean renderChannels(final float[] buffer, final int offset, final int length, final int channels) {
+        final BufferPool pool = _pool;
+        if (pool == null) {
+            return renderNodes(buffer, offset, length, channels);
+        }
+        final float[][] slotBuffers = _slotBuffers;
+        for (int s = 0; s < slotBuffers.length; s++) {
+            slotBuffers[s] = pool.acquire();
+        }
+        assignBuffers();
+        final boolean isBufferUpdated = renderNodes(buffer, offset, length, channels);
+        for (int s = 0; s < slotBuffers.length; s++) {
+            pool.release();
+        }
+        return isBufferUpdated;
+    }
+
+    private boolean renderNodes(final float[] buffer, final int offset, final int length, final int bufferChannels) {
+        final UGen[] nodes = _nodes;
+        final float[][] buffers = _buffers;
+        final int[] outChannels = _outChannels;
+        final int stride = _stride;
+        final int end = offset + length;
+
+        for (int n = 0; n < nodes.length; n++) {
+            final float[] out = buffers[n];
+            final int[] inputs = _inputs[n];
+            int channels = 0;
+
+            if (_isInPlace[n]) {
+                channels = outChannels[inputs[0]];
+                if (channels == 0) {
+                    clear(out, offset, end);
+                }
+            } else {
+                // A mono input stays mono unless it meets a wider one
+                for (int i = 0; i < inputs.length; i++) {
+                    channels = Math.max(channels, outChannels[inputs[i]]);
+                }
+                for (int c = 0; c < Math.max(1, channels); c++) {
+                    clear(out, c * stride + offset, c * stride + end);
+                }
+                for (int i = 0; i < inputs.length; i++) {
+                    final int inputChannels = outChannels[inputs[i]];
+                    if (inputChannels > 0) {
+                        mix(buffers[inputs[i]], inputChannels, out, channels, stride, offset, end);
+                    }
+                }
+            }
+            if (_nodeNanos == null) {
+                outChannels[n] = nodes[n].processChannels(out, offset, length, channels);
+            } else {
+                final long start = System.nanoTime();
+                outChannels[n] = nodes[n].processChannels(out, offset, length, channels);
+                _nodeNanos[n] += System.nanoTime() - start;
+            }
+        }
+
+        boolean isBufferUpdated = false;
+        for (int i = 0; i < _outputs.length; i++) {
+            final int channels = outChannels[_outputs[i]];
+            if (channels > 0) {
+                final float[] out = buffers[_outputs[i]];
+                if (channels > bufferChannels) {
+                    fold(out, channels, buffer, bufferChannels, stride, offset, end);
+                } else {
+                    mix(out, channels, buffer, bufferChannels, stride, offset, end);
+                }
+                isBufferUpdated = true;
+            }
+        }
+        return isBufferUpdated;
+    }
+
+    /**
+     * Move the node times summed up since the last call into the histograms.
+     * Called once per block when profiling.
+     */
+    void recordNodeTimes() {
+        if (_nodeNanos == null) {
+            return;
+        }
+        for (int n = 0; n < _nodeNanos.length; n++) {
+            _nodeTimes[n].record(_nodeNanos[n]);
+            _nodeNanos[n] = 0;
+        }
+    }
+
+    private static void clear(final float[] buffer, final int offset, final int end) {
+        for (int i = offset; i < end; i++) {
+            buffer[i] = 0;
+        }
+    }
+
+    /**
+     * Add a planar source into a planar target with at least as many
+     * channels, a mono source into every channel.
+     */
+    private static void mix(final float[] source, final int sourceChannels, final float[] target,
+            final int targetChannels, final int stride, final int offset, final int end) {
+        for (int c = 0; c < targetChannels; c++) {
+            final int from = sourceChannels == 1 ? 0 : Math.min(c, sourceChannels - 1) * stride;
+            add(source, from, target, c * stride, offset, end);
+        }
+    }
+
+    /**
+     * Add a planar source into a target with fewer channels, averaging the
+     * source channels c with the same c % targetChannels into one, e.g. all
+     * of them into mono, or 4 channels into stereo as (0 + 2) / 2 and (1 + 3) / 2.
+     */
+    private static void fold(final float[] source, final int sourceChannels, final float[] target,
+            final int targetChannels, final int stride, final int offset, final int end) {
+        for (int c = 0; c < sourceChannels; c++) {
+            final int t = c % targetChannels;
+            final int count = (sourceChannels - t + targetChannels - 1) / targetChannels;
+            KERNELS.mix(source, c * stride + offset, target, t * stride + offset, end - offset, 1f / count);
+        }
+    }
+
+    private static void add(final float[] source, final int sourceStart, final float[] target, final int targetStart,
+            final int offset, final int end) {
+        KERNELS.mix(source, sourceStart + offset, target, targetStart + offset, end - offset, 1f);
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.segoh.dsp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Real-time counters for a DAC: block render times against the block
+ * deadline, time spent blocked in the sink, device underruns and, when
+ * enabled, render times of every node of the compiled plan.
+ * Everything is preallocated and written without locks by the audio thread;
+ * other threads read through {@link #toString()} or the getters.
+ */
+public final class RenderStats {
+
+    private static final int BLOCKS = 0;
+    private static final int OVERRUNS = 1;
+    private static final int UNDERRUNS = 2;
+    private static final int MAX_RENDER_NANOS = 3;
+    private static final int COUNTERS = 4;
+
+    private final boolean _isProfilingNodes;
+    private final AtomicLongArray _counters = new AtomicLongArray(COUNTERS);
+    private final Histogram _renderTimes = new Histogram();
+    private final Histogram _writeTimes = new Histogram();
+    private volatile Nodes _nodes = new Nodes(new String[0], new Histogram[0]);
+
+    public RenderStats() {
+        this(false);
+    }
+
+    /**
+     * @param isProfilingNodes also time every node of compiled plans, at the
+     *        cost of two clock reads per node and block segment
+     */
+    public RenderStats(final boolean isProfilingNodes) {
+        _isProfilingNodes = isProfilingNodes;
+    }
+
+    public boolean isProfilingNodes() {
+        return _isProfilingNodes;
+    }
+
+    void recordBlock(final long renderNanos, final long deadlineNanos) {
+        increment(BLOCKS);
+        if (renderNanos > deadlineNanos) {
+            increment(OVERRUNS);
+        }
+        if (renderNanos > _counters.get(MAX_RENDER_NANOS)) {
+            _counters.lazySet(MAX_RENDER_NANOS, renderNanos);
+        }
+        _renderTimes.record(renderNanos);
+    }
+
+    void recordWrite(final long nanos) {
+        _writeTimes.record(nanos);
+    }
+
+    /**
+     * Called by device sinks when the device ran out of samples.
+     */
+    public void recordUnderrun() {
+        increment(UNDERRUNS);
+    }
+
+    private void increment(final int counter) {
+        _counters.lazySet(counter, _counters.get(counter) + 1);
+    }
+
+    /**
+     * Register the nodes of a freshly compiled plan, off the audio thread.
+     */
+    Histogram[] registerNodes(final UGen[] nodes) {
+        final String[] names = new String[nodes.length];
+        final Histogram[] histograms = new Histogram[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            names[i] = i + ":" + nodes[i].getClass().getSimpleName();
+            histograms[i] = new Histogram();
+        }
+        _nodes = new Nodes(names, histograms);
+        return histograms;
+    }
+
+    public long getBlocks() {
+        return _counters.get(BLOCKS);
+    }
+
+    public long getOverruns() {
+        return _counters.get(OVERRUNS);
+    }
+
+    public long getUnderruns() {
+        return _counters.get(UNDERRUNS);
+    }
+
+    public long getMaxRenderNanos() {
+        return _counters.get(MAX_RENDER_NANOS);
+    }
+
+    public long[] getRenderTimes() {
+        return _renderTimes.snapshot();
+    }
+
+    public long[] getWriteTimes() {
+        return _writeTimes.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder out = new StringBuilder();
+        out.append("blocks=").append(getBlocks())
+                .append(" overruns=").append(getOverruns())
+                .append(" underruns=").append(getUnderruns())
+                .append(" maxRender=").append(getMaxRenderNanos() / 1000).append("us\n");
+        appendHistogram(out, "render", getRenderTimes());
+        appendHistogram(out, "write", getWriteTimes());
+        final Nodes nodes = _nodes;
+        for (int i = 0; i < nodes.names.length; i++) {
+            appendHistogram(out, nodes.names[i], nodes.histograms[i].snapshot());
+        }
+        return out.toString();
+    }
+
+    private static void appendHistogram(final StringBuilder out, final String name, final long[] counts) {
+        out.append(name)
+                .append(": n=").append(Histogram.count(counts))
+                .append(" p50<").append(Histogram.quantile(counts, 0.5) / 1000.0).append("us")
+                .append(" p99<").append(Histogram.quantile(counts, 0.99) / 1000.0).append("us")
+                .append(" max<").append(Histogram.quantile(counts, 1.0) / 1000.0).append("us\n");
+    }
+
+    private static final class Nodes {
+
+        final String[] names;
+        final Histogram[] histograms;
+
+        Nodes(final String[] names, final Histogram[] histograms) {
+            this.names = names;
+            this.histograms = histograms;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.segoh.dsp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed pool of helper threads for rendering independent subgraphs in
+ * parallel. The rendering thread hands out a task per block with run(),
+ * takes part in it as worker 0 and waits until all workers are done.
+ * Workers spin briefly for the next task before they park, the rendering
+ * thread only spins. Nothing is allocated per task.
+ */
+public final class RenderWorkers {
+
+    /**
+     * Work split by worker index, run by all workers at once.
+     */
+    public interface Task {
+
+        /**
+         * @param worker 0 for the rendering thread, up to getCount() - 1
+         */
+        void run(int worker);
+    }
+
+    private static final long SPIN_NANOS = 50000;
+
+    private final Thread[] _threads;
+    private final AtomicInteger _pending = new AtomicInteger();
+    private final AtomicIntegerArray _isParked;
+    private volatile Task _task = null;
+    private volatile int _round = 0;
+    private volatile boolean _isRunning = true;
+    private volatile Throwable _error = null;
+
+    /**
+     * Start the helper threads.
+     * @param helpers number of threads besides the rendering thread
+     */
+    public RenderWorkers(final int helpers) {
+        _threads = new Thread[helpers];
+        _isParked = new AtomicIntegerArray(helpers);
+        for (int i = 0; i < helpers; i++) {
+            final int worker = i + 1;
+            _threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    work(worker);
+                }
+            }, "RenderWorker-" + worker);
+            _threads[i].setDaemon(true);
+            _threads[i].setPriority(Thread.MAX_PRIORITY);
+            _threads[i].start();
+        }
+    }
+
+    /**
+     * @return number of workers including the rendering thread
+     */
+    public int getCount() {
+        return _threads.length + 1;
+    }
+
+    /**
+     * Run the task on all workers and return once every one has finished.
+     * Only call from the rendering thread.
+     */
+    public void run(final Task task) {
+        _pending.set(_threads.length);
+        _task = task;
+        _round = _round + 1;
+        for (int i = 0; i < _threads.length; i++) {
+            if (_isParked.get(i) != 0) {
+                LockSupport.unpark(_threads[i]);
+            }
+        }
+
+        task.run(0);
+
+        int spins = 0;
+        while (_pending.get() > 0) {
+            if (++spins > 1000) {
+                Thread.yield();
+            }
+        }
+        _task = null;
+        final Throwable error = _error;
+        if (error != null) {
+            _error = null;
+            throw new IllegalStateException("Render worker failed", error);
+        }
+    }
+
+    /**
+     * Stop the helper threads, they exit after their current task.
+     */
+    public void shutdown() {
+        _isRunning = false;
+        for (final Thread thread : _threads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void work(final int worker) {
+        final int slot = worker - 1;
+        int seen = 0;
+        while (_isRunning) {
+            final long spinUntil = System.nanoTime() + SPIN_NANOS;
+            while (_round == seen && _isRunning && System.nanoTime() < spinUntil) {
+                // Spin, a new block is likely close
+            }
+            if (_round == seen) {
+                _isParked.set(slot, 1);
+                // Check again, the round may have started before the flag was seen
+                while (_round == seen && _isRunning) {
+                    LockSupport.park(this);
+                }
+                _isParked.set(slot, 0);
+            }
+            if (!_isRunning) {
+                break;
+            }
+            seen = _round;
+            try {
+                _task.run(worker);
+            } catch (final Throwable e) {
+                _error = e;
+            }
+            _pending.decrementAndGet();
+        }
+    }
+}
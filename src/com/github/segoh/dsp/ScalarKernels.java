@@ -0,0 +1,59 @@
+package com.github.segoh.dsp;
+
+/**
+ * Plain loops, the reference for every other {@link Kernels}.
+ */
+class ScalarKernels extends Kernels {
+
+    @Override
+    public void mix(final float[] source, final int sourceOffset, final float[] target, final int targetOffset,
+            final int length, final float gain) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] += gain * source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void scale(final float[] buffer, final int offset, final int length, float gain, final float step) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            gain += step;
+            buffer[i] *= gain;
+        }
+    }
+
+    @Override
+    public float scaleExp(final float[] buffer, final int offset, final int length, float level,
+            final float target, final float factor) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            buffer[i] *= level;
+            level += (target - level) * factor;
+        }
+        return level;
+    }
+
+    @Override
+    public float readLinear(final float[] table, final float[] buffer, final int offset, final int length,
+            float phase, final float cyclesPerSample, final int[] indices) {
+        final int size = table.length;
+        final int mask = size - 1;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            final float scaled = phase * size;
+            final float fraction = scaled - (int)scaled;
+            final int index = (int)scaled;
+            buffer[i] += (1.0f - fraction) * table[index & mask]
+                    + fraction * table[(index + 1) & mask];
+            phase = (phase + cyclesPerSample) - (int)phase;
+        }
+        return phase;
+    }
+
+    @Override
+    public void toPcm16(final float[] source, final short[] target, final int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = Pcm.toPcm16(source[i]);
+        }
+    }
+}
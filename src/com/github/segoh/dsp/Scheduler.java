@@ -0,0 +1,20 @@
+package com.github.segoh.dsp;
+
+/**
+ * Applies timed events from within the rendering thread, so that they take
+ * effect at the right frame instead of at the next block boundary.
+ */
+public interface Scheduler {
+
+    /**
+     * Called once before the first dispatch of every block.
+     */
+    void beginBlock();
+
+    /**
+     * Apply all events due at or before the given frame of the current block.
+     * @return the frame of the next pending event in this block, or
+     *         the block size if there is none.
+     */
+    int dispatch(final int frame);
+}
@@ -1,50 +1,154 @@
 package com.github.segoh.dsp;
 
-import java.util.ArrayList;
-
 /**
  * Base class for unit-generators.
  * This is based on Adam Smith's Ethereal Dialpad DSP code
  * https://gist.github.com/376028
+ *
+ * Parameter setters may be called from any thread and never block: they only
+ * store into volatile fields, which render() reads once at the start of a block.
  */
 public abstract class UGen {
 
-    public static final int BUFFER_SIZE = 256;
-    public static final int SAMPLE_RATE = 22050;
+    /**
+     * Level below which a tail counts as decayed, about -100 dB.
+     */
+    protected static final float SILENCE = 1e-5f;
+
+    private static final UGen[] NO_INPUTS = new UGen[0];
+    private static final Object GRAPH_LOCK = new Object();
+
+    /** Copy-on-write, so rendering can iterate it while the graph changes. */
+    private volatile UGen[] _inputs = NO_INPUTS;
+    /** Bumped whenever the inputs change. */
+    private volatile int _inputsVersion = 0;
 
-    protected final ArrayList<UGen> inputs = new ArrayList<UGen>(0);
+    protected final AudioContext context;
+
+    protected UGen(final AudioContext context) {
+        this.context = context;
+    }
+
+    public AudioContext getContext() {
+        return context;
+    }
 
     /**
      * Fill samples in the given buffer.
      * @param buffer
+     * @param offset index of the first sample to fill
+     * @param length number of samples to fill, at most the block size - offset
      * @return true if the buffer was updated.
      */
-    abstract public boolean render(final float[] buffer);
+    public boolean render(final float[] buffer, final int offset, final int length) {
+        return process(buffer, offset, length, renderInputs(buffer, offset, length));
+    }
+
+    /**
+     * Generate or process samples in place. The buffer already holds the sum
+     * of all inputs. By default a UGen just passes on that sum.
+     * Return false whenever the output is silent, e.g. once a tail has
+     * decayed, so that silence propagates and the DAC can go idle.
+     * @param hasInput true if any input updated the buffer, otherwise the
+     *        buffer holds zeros
+     * @return true if the buffer was updated.
+     */
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        return hasInput;
+    }
+
+    /**
+     * Channel aware process(), called by compiled {@link RenderPlan}s. The
+     * buffer is planar with {@code context.getBlockSize()} samples per
+     * channel; channels past the given count hold garbage. Mono UGens keep
+     * the default, which downmixes a multichannel input into the first
+     * channel and calls process().
+     * @param channels in the input, 0 if there is no input
+     * @return the channels in the output, 0 if it is silent
+     */
+    protected int processChannels(final float[] buffer, final int offset, final int length, final int channels) {
+        if (channels > 1) {
+            downmix(buffer, context.getBlockSize(), channels, offset, offset + length);
+        }
+        return process(buffer, offset, length, channels > 0) ? 1 : 0;
+    }
 
-    public synchronized UGen chuck(final UGen parent) {
-        if (!parent.inputs.contains(this)) {
-            parent.inputs.add(this);
+    /**
+     * Average all channels into the first one.
+     */
+    static void downmix(final float[] buffer, final int stride, final int channels, final int offset, final int end) {
+        final float scale = 1f / channels;
+        for (int i = offset; i < end; i++) {
+            float sum = buffer[i];
+            for (int c = 1; c < channels; c++) {
+                sum += buffer[c * stride + i];
+            }
+            buffer[i] = sum * scale;
+        }
+    }
+
+    public UGen chuck(final UGen parent) {
+        synchronized (GRAPH_LOCK) {
+            final UGen[] inputs = parent._inputs;
+            if (indexOf(inputs, this) < 0) {
+                final UGen[] next = new UGen[inputs.length + 1];
+                System.arraycopy(inputs, 0, next, 0, inputs.length);
+                next[inputs.length] = this;
+                parent._inputs = next;
+                parent._inputsVersion++;
+            }
         }
         return parent;
     }
 
-    public synchronized UGen unchuck(final UGen parent) {
-        if (parent.inputs.contains(this)) {
-            parent.inputs.remove(this);
+    public UGen unchuck(final UGen parent) {
+        synchronized (GRAPH_LOCK) {
+            final UGen[] inputs = parent._inputs;
+            final int index = indexOf(inputs, this);
+            if (index >= 0) {
+                final UGen[] next = inputs.length == 1 ? NO_INPUTS : new UGen[inputs.length - 1];
+                System.arraycopy(inputs, 0, next, 0, index);
+                System.arraycopy(inputs, index + 1, next, index, inputs.length - index - 1);
+                parent._inputs = next;
+                parent._inputsVersion++;
+            }
         }
         return parent;
     }
 
+    private static int indexOf(final UGen[] inputs, final UGen ugen) {
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] == ugen) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Changes with every chuck/unchuck into this UGen, so compiled plans can
+     * tell whether the part of the graph they cover is stale. Read it before
+     * getInputs().
+     */
+    int getInputsVersion() {
+        return _inputsVersion;
+    }
+
+    UGen[] getInputs() {
+        return _inputs;
+    }
+
     protected void silenceBuffer(final float[] buffer) {
-        for (int i = 0; i < BUFFER_SIZE; i++) {
+        for (int i = 0; i < buffer.length; i++) {
             buffer[i] = 0;
         }
     }
 
-    protected boolean renderInputs(final float[] buffer) {
+    protected boolean renderInputs(final float[] buffer, final int offset, final int length) {
+        final UGen[] inputs = _inputs;
         boolean isBufferUpdated = false;
-        for (final UGen input : inputs) {
-            isBufferUpdated |= input.render(buffer);
+        for (int i = 0; i < inputs.length; i++) {
+            isBufferUpdated |= inputs[i].render(buffer, offset, length);
         }
         return isBufferUpdated;
     }
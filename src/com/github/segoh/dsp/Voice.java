@@ -0,0 +1,17 @@
+package com.github.segoh.dsp;
+
+/**
+ * One preallocated note subgraph managed by a {@link VoiceAllocator}.
+ * render() must return false once the voice has become silent.
+ */
+public abstract class Voice extends UGen {
+
+    protected Voice(final AudioContext context) {
+        super(context);
+    }
+
+    /**
+     * Current output level, used to find the quietest voice to steal.
+     */
+    public abstract float getLevel();
+}
@@ -0,0 +1,257 @@
+package com.github.segoh.dsp;
+
+/**
+ * Assigns notes to a fixed pool of voices and mixes the voices that are sounding.
+ * Notes are identified by an integer key, e.g. a pointer id. Silent voices
+ * are skipped entirely. Allocation, stealing and rendering never allocate;
+ * all methods must be called from the rendering thread. With
+ * {@link RenderWorkers} set, two or more sounding voices render in parallel.
+ */
+public class VoiceAllocator extends UGen {
+
+    public static final int NO_KEY = -1;
+    public static final int STEAL_OLDEST = 0;
+    public static final int STEAL_QUIETEST = 1;
+
+    private static final Kernels KERNELS = Kernels.get();
+
+    private final Voice[] _voices;
+    private final int[] _keys;
+    private final long[] _ages;
+    private final boolean[] _sounding;
+    private final float[] _voiceBuffer;
+    private final int[] _active;
+    private final boolean[] _isRendered;
+    private float[][] _voiceBuffers = null;
+    private RenderWorkers _workers = null;
+    private final ParallelRender _parallelRender = new ParallelRender();
+    private long _noteCount = 0;
+    private int _stealPolicy = STEAL_OLDEST;
+    private int _voiceLimit;
+    private volatile float _gain = 1f;
+
+    public VoiceAllocator(final AudioContext context, final Voice[] voices) {
+        super(context);
+        _voiceBuffer = context.newBuffer();
+        _voices = voices;
+        _keys = new int[voices.length];
+        _ages = new long[voices.length];
+        _sounding = new boolean[voices.length];
+        _active = new int[voices.length];
+        _isRendered = new boolean[voices.length];
+        for (int i = 0; i < voices.length; i++) {
+            _keys[i] = NO_KEY;
+        }
+        _voiceLimit = voices.length;
+    }
+
+    public VoiceAllocator setStealPolicy(final int policy) {
+        _stealPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Render voices on these workers. Set this before rendering starts.
+     */
+    public VoiceAllocator setWorkers(final RenderWorkers workers) {
+        if (workers != null && _voiceBuffers == null) {
+            _voiceBuffers = new float[_voices.length][];
+            for (int i = 0; i < _voices.length; i++) {
+                _voiceBuffers[i] = context.newBuffer();
+            }
+        }
+        _workers = workers;
+        return this;
+    }
+
+    /**
+     * Start new notes on the first voices only, stealing among them. Voices
+     * above the limit play their notes to the end. Only call from the
+     * rendering thread.
+     */
+    public void setVoiceLimit(final int limit) {
+        _voiceLimit = Math.max(1, Math.min(limit, _voices.length));
+    }
+
+    public void setGain(final float gain) {
+        _gain = gain;
+    }
+
+    public int getVoiceCount() {
+        return _voices.length;
+    }
+
+    public Voice getVoice(final int index) {
+        return _voices[index];
+    }
+
+    /**
+     * Number of voices rendered in the last block, including released ones still
+     * fading out.
+     */
+    public int getSoundingCount() {
+        int count = 0;
+        for (int i = 0; i < _sounding.length; i++) {
+            if (_sounding[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Start a note. A key that is already held keeps its voice, otherwise a
+     * silent voice is used, or the oldest/quietest one is stolen; released
+     * voices are stolen before held ones.
+     * @return the voice to (re)start
+     */
+    public Voice noteOn(final int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            index = pickVoice();
+        }
+        _keys[index] = key;
+        _ages[index] = _noteCount++;
+        _sounding[index] = true;
+        return _voices[index];
+    }
+
+    /**
+     * Detach a key from its voice, the voice keeps sounding until it is silent.
+     * @return the voice to release, or null if the key is not held
+     */
+    public Voice noteOff(final int key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        _keys[index] = NO_KEY;
+        return _voices[index];
+    }
+
+    /**
+     * @return the voice playing the given key, or null
+     */
+    public Voice find(final int key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : _voices[index];
+    }
+
+    private int indexOf(final int key) {
+        if (key == NO_KEY) {
+            return -1;
+        }
+        for (int i = 0; i < _keys.length; i++) {
+            if (_keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int pickVoice() {
+        int released = -1;
+        int held = -1;
+        for (int i = 0; i < _voiceLimit; i++) {
+            if (!_sounding[i]) {
+                return i;
+            }
+            if (_keys[i] == NO_KEY) {
+                released = preferred(released, i);
+            } else {
+                held = preferred(held, i);
+            }
+        }
+        return released >= 0 ? released : held;
+    }
+
+    private int preferred(final int current, final int candidate) {
+        if (current < 0) {
+            return candidate;
+        }
+        if (_stealPolicy == STEAL_QUIETEST) {
+            return _voices[candidate].getLevel() < _voices[current].getLevel() ? candidate : current;
+        }
+        return _ages[candidate] < _ages[current] ? candidate : current;
+    }
+
+    @Override
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        int activeCount = 0;
+        for (int v = 0; v < _voices.length; v++) {
+            if (_sounding[v]) {
+                _active[activeCount++] = v;
+            }
+        }
+        // A single voice is not worth the handoff
+        if (_workers == null || activeCount < 2) {
+            return processSerial(buffer, offset, length, hasInput);
+        }
+
+        final ParallelRender task = _parallelRender;
+        task.offset = offset;
+        task.length = length;
+        task.activeCount = activeCount;
+        _workers.run(task);
+
+        final float gain = _gain;
+        boolean isBufferUpdated = hasInput;
+        for (int a = 0; a < activeCount; a++) {
+            final int v = _active[a];
+            if (!_isRendered[v]) {
+                _sounding[v] = _keys[v] != NO_KEY;
+                continue;
+            }
+            KERNELS.mix(_voiceBuffers[v], offset, buffer, offset, length, gain);
+            isBufferUpdated = true;
+        }
+        return isBufferUpdated;
+    }
+
+    private boolean processSerial(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final float[] voiceBuffer = _voiceBuffer;
+        final float gain = _gain;
+        final int end = offset + length;
+        boolean isBufferUpdated = hasInput;
+
+        for (int v = 0; v < _voices.length; v++) {
+            if (!_sounding[v]) {
+                continue;
+            }
+            // Voices process in place, so each one needs a clean buffer
+            for (int i = offset; i < end; i++) {
+                voiceBuffer[i] = 0;
+            }
+            if (!_voices[v].render(voiceBuffer, offset, length)) {
+                _sounding[v] = _keys[v] != NO_KEY;
+                continue;
+            }
+            KERNELS.mix(voiceBuffer, offset, buffer, offset, length, gain);
+            isBufferUpdated = true;
+        }
+        return isBufferUpdated;
+    }
+
+    /**
+     * Worker w renders every n-th sounding voice into its private buffer.
+     */
+    private final class ParallelRender implements RenderWorkers.Task {
+
+        int offset;
+        int length;
+        int activeCount;
+
+        public void run(final int worker) {
+            final int workers = _workers.getCount();
+            final int end = offset + length;
+            for (int a = worker; a < activeCount; a += workers) {
+                final int v = _active[a];
+                final float[] voiceBuffer = _voiceBuffers[v];
+                for (int i = offset; i < end; i++) {
+                    voiceBuffer[i] = 0;
+                }
+                _isRendered[v] = _voices[v].render(voiceBuffer, offset, length);
+            }
+        }
+    }
+}
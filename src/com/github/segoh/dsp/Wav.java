@@ -0,0 +1,43 @@
+package com.github.segoh.dsp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Helpers for 16-bit PCM RIFF/WAVE streams.
+ */
+final class Wav {
+
+    static final int HEADER_SIZE = 44;
+    static final int BYTES_PER_SAMPLE = 2;
+
+    private Wav() {
+    }
+
+    /**
+     * Write a canonical 44 byte header at the current position of the buffer.
+     */
+    static void putHeader(final ByteBuffer out, final int sampleRate, final int channels, final int dataSize) {
+        final ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.putInt(0x52494646); // "RIFF"
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(36 + dataSize);
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.putInt(0x57415645); // "WAVE"
+        out.putInt(0x666d7420); // "fmt "
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(16);
+        out.putShort((short)1); // PCM
+        out.putShort((short)channels);
+        out.putInt(sampleRate);
+        out.putInt(sampleRate * channels * BYTES_PER_SAMPLE);
+        out.putShort((short)(channels * BYTES_PER_SAMPLE));
+        out.putShort((short)(8 * BYTES_PER_SAMPLE));
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.putInt(0x64617461); // "data"
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(dataSize);
+        out.order(order);
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.segoh.dsp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes rendered blocks as a 16-bit WAV image into a caller supplied buffer.
+ * The image starts at the buffer position on {@link #open(AudioContext)}; the header is
+ * patched with the final length on {@link #close()}.
+ */
+public class WavBufferSink implements AudioSink {
+
+    private final ByteBuffer _target;
+    private int _sampleRate;
+    private int _channels;
+    private int _start;
+
+    public WavBufferSink(final ByteBuffer target) {
+        _target = target;
+    }
+
+    public void open(final AudioContext context) {
+        _sampleRate = context.getSampleRate();
+        _channels = context.getChannels();
+        _start = _target.position();
+        Wav.putHeader(_target, _sampleRate, _channels, 0);
+    }
+
+    public void write(final float[] buffer, final int length) {
+        final ByteBuffer target = _target;
+        final ByteOrder order = target.order();
+        target.order(ByteOrder.LITTLE_ENDIAN);
+        final int samples = length * _channels;
+        for (int i = 0; i < samples; i++) {
+            target.putShort(Pcm.toPcm16(buffer[i]));
+        }
+        target.order(order);
+    }
+
+    public void writeSilence(final int length) {
+        final int samples = length * _channels;
+        for (int i = 0; i < samples; i++) {
+            _target.putShort((short)0);
+        }
+    }
+
+    public void pause() {
+    }
+
+    public void resume() {
+    }
+
+    public void close() {
+        final int end = _target.position();
+        _target.position(_start);
+        Wav.putHeader(_target, _sampleRate, _channels, end - _start - Wav.HEADER_SIZE);
+        _target.position(end);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.segoh.dsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes rendered blocks to a 16-bit WAV file with the channels of the context.
+ * The header is patched with the final length on {@link #close()}.
+ */
+public class WavFileSink implements AudioSink {
+
+    private static final Kernels KERNELS = Kernels.get();
+
+    private final File _file;
+    private int _sampleRate;
+    private int _channels;
+    private ByteBuffer _bytes;
+    private ShortBuffer _samples;
+    private short[] _pcm;
+    private RandomAccessFile _raf = null;
+    private FileChannel _channel = null;
+    private int _dataSize;
+
+    public WavFileSink(final File file) {
+        _file = file;
+    }
+
+    public void open(final AudioContext context) {
+        _sampleRate = context.getSampleRate();
+        _channels = context.getChannels();
+        allocate(context.getBlockSize() * _channels);
+        try {
+            _raf = new RandomAccessFile(_file, "rw");
+            _raf.setLength(0);
+            _channel = _raf.getChannel();
+            _dataSize = 0;
+            final ByteBuffer header = ByteBuffer.allocate(Wav.HEADER_SIZE);
+            Wav.putHeader(header, _sampleRate, _channels, 0);
+            header.flip();
+            writeFully(header);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot open " + _file, e);
+        }
+    }
+
+    public void write(final float[] buffer, final int length) {
+        final int samples = length * _channels;
+        final ByteBuffer bytes = prepare(samples);
+        KERNELS.toPcm16(buffer, _pcm, samples);
+        _samples.clear();
+        _samples.put(_pcm, 0, samples);
+        bytes.position(samples * Wav.BYTES_PER_SAMPLE);
+        flush(bytes);
+    }
+
+    public void writeSilence(final int length) {
+        final int samples = length * _channels;
+        final ByteBuffer bytes = prepare(samples);
+        for (int i = 0; i < samples; i++) {
+            bytes.putShort((short)0);
+        }
+        flush(bytes);
+    }
+
+    public void pause() {
+    }
+
+    public void resume() {
+    }
+
+    public void close() {
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(Wav.HEADER_SIZE);
+            Wav.putHeader(header, _sampleRate, _channels, _dataSize);
+            header.flip();
+            _channel.position(0);
+            writeFully(header);
+            _channel.close();
+            _raf.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot finish " + _file, e);
+        } finally {
+            _channel = null;
+            _raf = null;
+        }
+    }
+
+    private ByteBuffer prepare(final int samples) {
+        if (_pcm.length < samples) {
+            allocate(samples);
+        }
+        _bytes.clear();
+        return _bytes;
+    }
+
+    private void allocate(final int samples) {
+        _bytes = ByteBuffer.allocateDirect(samples * Wav.BYTES_PER_SAMPLE).order(ByteOrder.LITTLE_ENDIAN);
+        _samples = _bytes.asShortBuffer();
+        _pcm = new short[samples];
+    }
+
+    private void flush(final ByteBuffer bytes) {
+        bytes.flip();
+        _dataSize += bytes.remaining();
+        try {
+            writeFully(bytes);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot write " + _file, e);
+        }
+    }
+
+    private void writeFully(final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            _channel.write(bytes);
+        }
+    }
+}
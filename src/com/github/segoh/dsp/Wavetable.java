@@ -0,0 +1,176 @@
+package com.github.segoh.dsp;
+
+import java.util.HashMap;
+
+/**
+ * Immutable, band-limited single cycle waveform with one table per octave.
+ * Level 0 holds all harmonics that fit into the table, every following
+ * level half as many, down to a pure sine. An oscillator picks the richest
+ * level whose highest harmonic stays below Nyquist at its frequency.
+ *
+ * Instances are flyweights: the factory methods build each waveform once
+ * and hand out the same tables to every oscillator.
+ */
+public final class Wavetable {
+
+    public static final int BITS = 11;
+    public static final int SIZE = 1 << BITS;
+    public static final int MASK = SIZE - 1;
+    public static final int LEVELS = BITS;
+
+    private static final HashMap<String, Wavetable> CACHE = new HashMap<String, Wavetable>();
+
+    private final float[][] _levels;
+
+    private Wavetable(final float[][] levels) {
+        _levels = levels;
+    }
+
+    public static Wavetable sine() {
+        return cached("sin", new Shape() {
+            public float at(final double phase) {
+                return (float)Math.sin(2.0 * Math.PI * phase);
+            }
+        });
+    }
+
+    public static Wavetable hardSine(final float exp) {
+        return cached("hardsin:" + exp, new Shape() {
+            public float at(final double phase) {
+                return (float)Math.pow(Math.sin(2.0 * Math.PI * phase), exp);
+            }
+        });
+    }
+
+    public static Wavetable saw() {
+        return cached("saw", new Shape() {
+            public float at(final double phase) {
+                return (float)(1.0 - 2.0 * phase);
+            }
+        });
+    }
+
+    public static Wavetable square() {
+        return pulse(0.5f);
+    }
+
+    public static Wavetable pulse(final float duty) {
+        return cached("pulse:" + duty, new Shape() {
+            public float at(final double phase) {
+                return phase < duty ? 1f : -1f;
+            }
+        });
+    }
+
+    public static Wavetable silence() {
+        return cached("zero", new Shape() {
+            public float at(final double phase) {
+                return 0f;
+            }
+        });
+    }
+
+    /**
+     * The table for the given level, see {@link #levelFor(float)}.
+     */
+    public float[] getTable(final int level) {
+        return _levels[level];
+    }
+
+    /**
+     * The richest level without harmonics above Nyquist.
+     * @param cyclesPerSample oscillator frequency divided by the sample rate
+     */
+    public static int levelFor(final float cyclesPerSample) {
+        // Level n holds harmonics up to SIZE >> (n + 1)
+        float highest = Math.abs(cyclesPerSample) * (SIZE >> 1);
+        int level = 0;
+        while (highest > 0.5f && level < LEVELS - 1) {
+            highest *= 0.5f;
+            level++;
+        }
+        return level;
+    }
+
+    private interface Shape {
+        /** @param phase in [0, 1) */
+        float at(double phase);
+    }
+
+    private static synchronized Wavetable cached(final String key, final Shape shape) {
+        Wavetable table = CACHE.get(key);
+        if (table == null) {
+            table = build(shape);
+            CACHE.put(key, table);
+        }
+        return table;
+    }
+
+    private static Wavetable build(final Shape shape) {
+        final double[] re = new double[SIZE];
+        final double[] im = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            re[i] = shape.at((double)i / SIZE);
+        }
+        fft(re, im, false);
+
+        final float[][] levels = new float[LEVELS][];
+        final double[] levelRe = new double[SIZE];
+        final double[] levelIm = new double[SIZE];
+        for (int level = 0; level < LEVELS; level++) {
+            final int highest = Math.min(SIZE >> (level + 1), SIZE / 2 - 1);
+            for (int k = 0; k < SIZE; k++) {
+                final int harmonic = k <= SIZE / 2 ? k : SIZE - k;
+                final boolean isKept = harmonic <= highest;
+                levelRe[k] = isKept ? re[k] : 0;
+                levelIm[k] = isKept ? im[k] : 0;
+            }
+            fft(levelRe, levelIm, true);
+            levels[level] = new float[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                levels[level][i] = (float)(levelRe[i] / SIZE);
+            }
+        }
+        return new Wavetable(levels);
+    }
+
+    /**
+     * In-place radix-2 complex FFT, unscaled in both directions.
+     */
+    private static void fft(final double[] re, final double[] im, final boolean inverse) {
+        final int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            final double angle = (inverse ? 2 : -2) * Math.PI / len;
+            final double wRe = Math.cos(angle);
+            final double wIm = Math.sin(angle);
+            for (int i = 0; i < n; i += len) {
+                double curRe = 1;
+                double curIm = 0;
+                for (int k = 0; k < len / 2; k++) {
+                    final int a = i + k;
+                    final int b = a + len / 2;
+                    final double bRe = re[b] * curRe - im[b] * curIm;
+                    final double bIm = re[b] * curIm + im[b] * curRe;
+                    re[b] = re[a] - bRe;
+                    im[b] = im[a] - bIm;
+                    re[a] += bRe;
+                    im[a] += bIm;
+                    final double nextRe = curRe * wRe - curIm * wIm;
+                    curIm = curRe * wIm + curIm * wRe;
+                    curRe = nextRe;
+                }
+            }
+        }
+    }
+}
@@ -1,80 +1,181 @@
 package com.github.segoh.dsp;
 
-import android.util.FloatMath;
-
+/**
+ * Oscillator reading one of the shared, band-limited {@link Wavetable}s.
+ * The octave level is chosen once per block from the current frequency.
+ */
 public class WavetableOsc extends UGen {
 
-    public static final int BITS = 8;
-    public static final int ENTRIES = 1 << (BITS - 1);
-    public static final int MASK = ENTRIES - 1;
+    public static final int ENTRIES = Wavetable.SIZE;
+    public static final int MASK = Wavetable.MASK;
+    public static final int INTERPOLATE_NONE = 0;
+    public static final int INTERPOLATE_LINEAR = 1;
+    public static final int INTERPOLATE_CUBIC = 2;
+
+    private static final Kernels KERNELS = Kernels.get();
 
     private float _phase;
-    private float _cyclesPerSample;
-    private final float[] _table;
+    private float _currentCycles;
+    private float _glideStep;
+    private int _glideFrames = 0;
+    private float _lastTarget;
+    private volatile float _cyclesPerSample;
+    private volatile float _portamento = 0;
+    private volatile int _interpolation = INTERPOLATE_LINEAR;
+    private volatile Wavetable _wavetable;
+    private final int[] _indices = new int[Kernels.SCRATCH_INTS];
+
+    public WavetableOsc(final AudioContext context) {
+        super(context);
+        _wavetable = Wavetable.silence();
+    }
+
+    /**
+     * Move to a frequency at the next block, sliding there over the
+     * portamento time.
+     */
+    public void setFreq(final float freq) {
+        _cyclesPerSample = freq / context.getSampleRate();
+    }
+
+    /**
+     * Time in seconds setFreq() takes to slide to a new frequency, 0 to jump.
+     */
+    public void setPortamento(final float seconds) {
+        _portamento = seconds;
+    }
 
-    public WavetableOsc () {
-        _table = new float[ENTRIES];
+    /**
+     * Table lookup quality, from truncating to 4 point cubic.
+     */
+    public void setInterpolation(final int interpolation) {
+        _interpolation = interpolation;
     }
 
-    public synchronized void setFreq(final float freq) {
-        _cyclesPerSample = freq / UGen.SAMPLE_RATE;
+    /**
+     * Slide linearly to a frequency. Only call from the rendering thread.
+     * @param frames length of the slide in samples
+     */
+    public void glideTo(final float freq, final int frames) {
+        final float target = freq / context.getSampleRate();
+        _cyclesPerSample = target;
+        startGlide(target, frames);
+    }
+
+    private void startGlide(final float target, final int frames) {
+        _lastTarget = target;
+        if (frames <= 0) {
+            _glideFrames = 0;
+            return;
+        }
+        _glideStep = (target - _currentCycles) / frames;
+        _glideFrames = frames;
     }
 
     @Override
-    public synchronized boolean render(final float[] buffer) {
-        for (int i = 0; i < UGen.BUFFER_SIZE; i++) {
-            final float scaled = _phase * ENTRIES;
-            final float fraction = scaled - (int)scaled;
-            final int index = (int)scaled;
-            buffer[i] += (1.0f - fraction) * _table[index & MASK]
-                    + fraction * _table[(index + 1) & MASK];
-            _phase = (_phase + _cyclesPerSample) - (int)_phase;
+    protected boolean process(final float[] buffer, final int offset, final int length, final boolean hasInput) {
+        final float target = _cyclesPerSample;
+        if (target != _lastTarget) {
+            startGlide(target, (int)(_portamento * context.getSampleRate()));
         }
+        final int glideFrames = Math.min(_glideFrames, length);
+        float cyclesPerSample = glideFrames > 0 ? _currentCycles : target;
+        final float glideStep = _glideStep;
+        // Choose the level for the highest frequency reached in this block
+        final float highest = Math.max(cyclesPerSample, cyclesPerSample + glideStep * glideFrames);
+        final float[] table = _wavetable.getTable(Wavetable.levelFor(highest));
+        final int interpolation = _interpolation;
+
+        final int glideEnd = offset + glideFrames;
+        float phase = renderSpan(buffer, offset, glideEnd, table, _phase, cyclesPerSample, glideStep, interpolation);
+        cyclesPerSample += glideStep * glideFrames;
+        _glideFrames -= glideFrames;
+        if (_glideFrames == 0) {
+            cyclesPerSample = target;
+        }
+        if (interpolation == INTERPOLATE_LINEAR) {
+            phase = KERNELS.readLinear(table, buffer, glideEnd, offset + length - glideEnd, phase, cyclesPerSample,
+                    _indices);
+        } else {
+            phase = renderSpan(buffer, glideEnd, offset + length, table, phase, cyclesPerSample, 0, interpolation);
+        }
+        _phase = phase;
+        _currentCycles = cyclesPerSample;
         return true;
     }
 
-    public WavetableOsc fillWithSin() {
-        final float dt = (float)(2.0 * Math.PI / ENTRIES);
-        for (int i = 0; i < ENTRIES; i++) {
-            _table[i] = FloatMath.sin(i * dt);
+    /**
+     * @return the phase after the span
+     */
+    private static float renderSpan(final float[] buffer, final int from, final int to, final float[] table,
+            float phase, float cyclesPerSample, final float step, final int interpolation) {
+        switch (interpolation) {
+            case INTERPOLATE_NONE:
+                for (int i = from; i < to; i++) {
+                    buffer[i] += table[(int)(phase * ENTRIES) & MASK];
+                    phase = (phase + cyclesPerSample) - (int)phase;
+                    cyclesPerSample += step;
+                }
+                break;
+            case INTERPOLATE_CUBIC:
+                for (int i = from; i < to; i++) {
+                    final float scaled = phase * ENTRIES;
+                    final int index = (int)scaled;
+                    final float f = scaled - index;
+                    final float y0 = table[(index - 1) & MASK];
+                    final float y1 = table[index & MASK];
+                    final float y2 = table[(index + 1) & MASK];
+                    final float y3 = table[(index + 2) & MASK];
+                    // Catmull-Rom spline through the four points
+                    final float c1 = 0.5f * (y2 - y0);
+                    final float c2 = y0 - 2.5f * y1 + 2f * y2 - 0.5f * y3;
+                    final float c3 = 0.5f * (y3 - y0) + 1.5f * (y1 - y2);
+                    buffer[i] += ((c3 * f + c2) * f + c1) * f + y1;
+                    phase = (phase + cyclesPerSample) - (int)phase;
+                    cyclesPerSample += step;
+                }
+                break;
+            default:
+                for (int i = from; i < to; i++) {
+                    final float scaled = phase * ENTRIES;
+                    final float fraction = scaled - (int)scaled;
+                    final int index = (int)scaled;
+                    buffer[i] += (1.0f - fraction) * table[index & MASK]
+                            + fraction * table[(index + 1) & MASK];
+                    phase = (phase + cyclesPerSample) - (int)phase;
+                    cyclesPerSample += step;
+                }
+                break;
         }
+        return phase;
+    }
+
+    public WavetableOsc fillWith(final Wavetable wavetable) {
+        _wavetable = wavetable;
         return this;
     }
 
+    public WavetableOsc fillWithSin() {
+        return fillWith(Wavetable.sine());
+    }
+
     public WavetableOsc fillWithHardSin(final float exp) {
-        final float dt = (float)(2.0 * Math.PI / ENTRIES);
-        for (int i = 0; i < ENTRIES; i++) {
-            _table[i] = (float) Math.pow(FloatMath.sin(i * dt), exp);
-        }
-        return this;
+        return fillWith(Wavetable.hardSine(exp));
     }
 
     public WavetableOsc fillWithZero() {
-        for (int i = 0; i < ENTRIES; i++) {
-            _table[i] = 0;
-        }
-        return this;
+        return fillWith(Wavetable.silence());
     }
 
     public WavetableOsc fillWithSqr() {
-        for (int i = 0; i < ENTRIES; i++) {
-            _table[i] = (i < (ENTRIES / 2)) ? 1f : -1f;
-        }
-        return this;
+        return fillWith(Wavetable.square());
     }
 
     public WavetableOsc fillWithSqrDuty(final float fraction) {
-        for (int i = 0; i < ENTRIES; i++) {
-            _table[i] = (float)i / ((ENTRIES < fraction) ? 1f : -1f);
-        }
-        return this;
+        return fillWith(Wavetable.pulse(fraction));
     }
 
     public WavetableOsc fillWithSaw() {
-        float dt = (float)(2.0 / ENTRIES);
-        for (int i = 0; i < ENTRIES; i++) {
-            _table[i] = 1.0f - i * dt;
-        }
-        return this;
+        return fillWith(Wavetable.saw());
     }
 }